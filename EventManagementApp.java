@@ -1,428 +1,3783 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.text.JTextComponent;
 import java.awt.*;
 import java.awt.event.*;
 import java.sql.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.lang.reflect.InvocationHandler;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import javax.management.*;
+
+
+class LatencyHistogram {
+    // Log-linear buckets: 32 sub-buckets per power of two (about 3% relative error), like HdrHistogram.
+    private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
 
+    public void recordSince(long startNanos) { record(System.nanoTime() - startNanos); }
 
-class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/eventdb";
-    private static final String USER = "root";
-    private static final String PASS = "";
+    public long count() { return count.sum(); }
+    public long maxNanos() { return max.get(); }
+    public double meanNanos() { long n = count.sum(); return n == 0 ? 0 : (double) sum.sum() / n; }
+
+    // Highest value that falls into the same bucket as the q-th quantile.
+    public long percentileNanos(double q) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n)), seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    private static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) | (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    private static long upperBound(int index) {
+        int group = index >>> SUB_BITS, sub = index & (SUB - 1);
+        if (group == 0) return sub;
+        int shift = group - 1;
+        return (((long) (SUB | sub) + 1) << shift) - 1;
+    }
+}
+
+
+class Metrics {
+    private static final ConcurrentHashMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final ConcurrentHashMap<String, Boolean> STARTUP_MARKS = new ConcurrentHashMap<>();
+
+    public static LatencyHistogram histogram(String name) { return HISTOGRAMS.computeIfAbsent(name, k -> new LatencyHistogram()); }
+    public static LongAdder counter(String name) { return COUNTERS.computeIfAbsent(name, k -> new LongAdder()); }
 
-    public static Connection getConnection() {
+    // Registers the JMX view and, when eventdb.metrics.file is set, dumps a snapshot there periodically and at exit.
+    public static void start() {
+        if (!STARTED.compareAndSet(false, true)) return;
         try {
-            return DriverManager.getConnection(URL, USER, PASS);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("eventdb:type=Metrics"));
         } catch (Exception e) {
-            e.printStackTrace(); 
-            return null;
+            e.printStackTrace();
         }
+        String file = System.getProperty("eventdb.metrics.file");
+        if (file == null) return;
+        Path path = Paths.get(file);
+        long interval = Long.getLong("eventdb.metrics.dumpIntervalMs", 60_000L);
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump"); t.setDaemon(true); return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> dumpQuietly(path), interval, interval, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dumpQuietly(path), "metrics-final-dump"));
     }
-}
 
+    // Records the time from process start to the first call for each name, e.g. startup.firstFrame. Avoids
+    // java.lang.management, which costs more to load than the first frame itself.
+    public static void markStartup(String name) {
+        if (STARTUP_MARKS.putIfAbsent(name, Boolean.TRUE) != null) return;
+        long now = System.currentTimeMillis();
+        long since = now - ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli).orElse(now);
+        histogram(name).record(TimeUnit.MILLISECONDS.toNanos(since));
+        if (Boolean.getBoolean("eventdb.startup.log")) System.err.println(name + ": " + since + " ms");
+    }
 
-class CustomerDAO {
-    public int saveCustomer(String name, String phone, String address) throws Exception {
-        String sql = "INSERT INTO customers (name, phone, address) VALUES (?, ?, ?)";
-        try (Connection con = DBConnection.getConnection()) {
-            if (con == null) throw new Exception("JDBC Not Connected");
-            try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setString(1, name);
-                ps.setString(2, phone);
-                ps.setString(3, address);
-                int affected = ps.executeUpdate();
-                if (affected == 0) throw new Exception("Insert failed, no rows affected.");
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    if (rs.next()) return rs.getInt(1);
-                    else return -1;
+    // Records every event dispatch that blocks the EDT for longer than the threshold.
+    public static void installEdtStallDetector(long thresholdMillis) {
+        long threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        LatencyHistogram stalls = histogram("ui.edt.stall");
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EventQueue() {
+            @Override
+            protected void dispatchEvent(AWTEvent event) {
+                long start = System.nanoTime();
+                try {
+                    super.dispatchEvent(event);
+                } finally {
+                    long took = System.nanoTime() - start;
+                    if (took > threshold) stalls.record(took);
                 }
             }
-        }
+        });
     }
 
-    public void saveBooking(int custId, String type, String date, String time, double price, String venue, String extra) throws Exception {
-        String sql = "INSERT INTO bookings (customer_id, event_type, event_date, event_time, price, venue, extra_details) VALUES (?,?,?,?,?,?,?)";
-        try (Connection con = DBConnection.getConnection()) {
-            if (con == null) throw new Exception("JDBC Not Connected");
-            try (PreparedStatement ps = con.prepareStatement(sql)) {
-                if (custId > 0) ps.setInt(1, custId);
-                else ps.setNull(1, Types.INTEGER);
-                ps.setString(2, type);
-                ps.setString(3, date);
-                ps.setString(4, time);
-                ps.setDouble(5, price);
-                ps.setString(6, venue);
-                ps.setString(7, extra);
-                ps.executeUpdate();
-            }
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %10s %10s %10s %10s %10s%n", "latency", "count", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)"));
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            sb.append(String.format("%-28s %10d %10.3f %10.3f %10.3f %10.3f%n", e.getKey(), h.count(),
+                    h.percentileNanos(0.50) / 1e6, h.percentileNanos(0.99) / 1e6, h.percentileNanos(0.999) / 1e6, h.maxNanos() / 1e6));
         }
+        sb.append(String.format("%n%-28s %10s%n", "counter", "value"));
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet())
+            sb.append(String.format("%-28s %10d%n", e.getKey(), e.getValue().sum()));
+        sb.append(System.lineSeparator());
+        for (int i = 0; i < DBConnection.shardCount(); i++)
+            sb.append(String.format("%-28s %s%n", DBConnection.shardCount() == 1 ? "db.pool" : "db.pool." + i, DBConnection.poolStats(i)));
+        return sb.toString();
     }
-}
-
 
-abstract class Event {
-    private String date;
-    private String time;
-    private String venue;
+    public static void dumpTo(Path path) throws IOException {
+        Path tmp = Paths.get(path + ".tmp");
+        Files.write(tmp, (Instant.now() + System.lineSeparator() + report()).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-    public void setDetails(String d, String t, String v) { this.date = d; this.time = t; this.venue = v; }
-    public String getDate(){ return date; }
-    public String getTime(){ return time; }
-    public String getVenue(){ return venue; }
-    public abstract double calculatePrice();
-    public String extraDetails(){ return ""; } 
-}
+    private static void dumpQuietly(Path path) {
+        try { dumpTo(path); } catch (IOException e) { e.printStackTrace(); }
+    }
 
+    // Read-only JMX view: one attribute per counter and <histogram>.count/.p50Ms/.p99Ms/.p999Ms/.maxMs, plus "report".
+    static final class MetricsMBean implements DynamicMBean {
+        private static final String[] STATS = {"count", "p50Ms", "p99Ms", "p999Ms", "maxMs"};
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("report")) return report();
+            LongAdder counter = COUNTERS.get(attribute);
+            if (counter != null) return counter.sum();
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram h = dot < 0 ? null : HISTOGRAMS.get(attribute.substring(0, dot));
+            if (h != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return h.count();
+                    case "p50Ms": return h.percentileNanos(0.50) / 1e6;
+                    case "p99Ms": return h.percentileNanos(0.99) / 1e6;
+                    case "p999Ms": return h.percentileNanos(0.999) / 1e6;
+                    case "maxMs": return h.maxNanos() / 1e6;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
 
-class MarriageEvent extends Event {
-    private String bride, groom;
-    public void setBride(String b){ this.bride = b; }
-    public void setGroom(String g){ this.groom = g; }
-    public String getBride(){ return bride; }
-    public String getGroom(){ return groom; }
-    public double calculatePrice() { return 50000; }
-    public String extraDetails(){ return "Bride: "+bride+", Groom: "+groom; }
-}
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try { list.add(new Attribute(a, getAttribute(a))); } catch (AttributeNotFoundException ignored) {}
+            }
+            return list;
+        }
 
-class BirthdayEvent extends Event {
-    private String birthdayName;
-    public void setBirthdayName(String n){ this.birthdayName = n; }
-    public String getBirthdayName(){ return birthdayName; }
-    public double calculatePrice() { return 15000; }
-    public String extraDetails(){ return "Birthday Name: "+birthdayName; }
-}
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            attrs.add(new MBeanAttributeInfo("report", "java.lang.String", "Text snapshot of all metrics", true, false, false));
+            for (String name : new TreeMap<>(COUNTERS).keySet())
+                attrs.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+            for (String name : new TreeMap<>(HISTOGRAMS).keySet())
+                for (String stat : STATS)
+                    attrs.add(new MBeanAttributeInfo(name + "." + stat, stat.equals("count") ? "long" : "double", "Latency", true, false, false));
+            return new MBeanInfo(getClass().getName(), "Event booking metrics", attrs.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
 
-class EngagementEvent extends Event {
-    private String coupleNames, venuePreference;
-    private int guestCount;
-    public void setCoupleNames(String s){ this.coupleNames = s; }
-    public void setVenuePreference(String v){ this.venuePreference = v; }
-    public void setGuestCount(int g){ this.guestCount = g; }
-    public String getCoupleNames(){ return coupleNames; }
-    public double calculatePrice() { return 30000 + guestCount*500; }
-    public String extraDetails(){ return "Couple: "+coupleNames+", Guests: "+guestCount; }
-}
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
 
-class BabyShowerEvent extends Event {
-    private String motherName, theme;
-    private int guestCount;
-    public void setMotherName(String m){ this.motherName = m; }
-    public void setTheme(String t){ this.theme = t; }
-    public void setGuestCount(int g){ this.guestCount = g; }
-    public double calculatePrice() { return 20000 + guestCount*300; }
-    public String extraDetails(){ return "Mother: "+motherName+", Theme: "+theme+", Guests: "+guestCount; }
-}
+        public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
 
-class AnniversaryEvent extends Event {
-    private String coupleNames, venueType;
-    private int yearsCompleted;
-    public void setCoupleNames(String s){ this.coupleNames = s; }
-    public void setVenueType(String v){ this.venueType = v; }
-    public void setYearsCompleted(int y){ this.yearsCompleted = y; }
-    public double calculatePrice() { return 25000 + yearsCompleted*1000; }
-    public String extraDetails(){ return "Couple: "+coupleNames+", Years: "+yearsCompleted+", Venue: "+venueType; }
+        public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(action));
+        }
+    }
 }
 
 
-class PaymentProcessor {
-    public synchronized void processPayment(double amount) throws Exception {
-        if(amount <= 0) throw new Exception("Invalid Amount");
-        // simulate processing
-        try { Thread.sleep(1500); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
-    }
-}
+class DBConnection {
+    private static final String URL = "jdbc:mysql://localhost:3306/eventdb";
+    private static final String USER = "root";
+    private static final String PASS = "";
+    // ids step by this much on every shard, so shard k only ever generates ids = k + 1 (mod ID_STRIDE)
+    static final int ID_STRIDE = Integer.getInteger("eventdb.shards.idStride", 32);
 
+    private static final class Shards {
+        final String[] names;
+        final ConnectionPool[] pools;
+        final ShardRing ring;
 
-class PlaceholderTextField extends JTextField {
-    private String placeholder;
-    private Color placeholderColor = Color.GRAY;
-    private boolean showPlaceholderAlways = false;
+        Shards(String[] names, ConnectionPool[] pools) {
+            this.names = names; this.pools = pools;
+            this.ring = new ShardRing(names, Integer.getInteger("eventdb.shards.vnodes", 160));
+        }
+    }
 
-    public PlaceholderTextField(String placeholder) {
-        super();
-        this.placeholder = placeholder;
-      
-        setOpaque(true);
-        
-        setMargin(new Insets(2,6,2,2));
+    private static volatile Shards SHARDS = configured();
+
+    // -Deventdb.shards=url1,url2,... spreads bookings over several databases by venue and customers by phone.
+    // Shards are identified by URL on the hash ring; append new ones at the end, since position fixes the id stride.
+    private static Shards configured() {
+        String list = System.getProperty("eventdb.shards", "").trim();
+        if (list.isEmpty()) return single(() -> DriverManager.getConnection(URL, USER, PASS));
+        String[] urls = list.split("\\s*,\\s*");
+        if (urls.length > ID_STRIDE) throw new IllegalStateException("At most " + ID_STRIDE + " shards (eventdb.shards.idStride)");
+        ConnectionPool.ConnectionFactory[] factories = new ConnectionPool.ConnectionFactory[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            String url = urls[i];
+            factories[i] = () -> DriverManager.getConnection(url, USER, PASS);
+        }
+        return sharded(urls, factories);
     }
 
-    public PlaceholderTextField(String placeholder, int columns) {
-        super(columns);
-        this.placeholder = placeholder;
-        setOpaque(true);
-        setMargin(new Insets(2,6,2,2));
+    private static Shards single(ConnectionPool.ConnectionFactory factory) {
+        return new Shards(new String[]{"default"}, new ConnectionPool[]{newPool(factory)});
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        if ((getText() == null || getText().length() == 0) && ! (showPlaceholderAlways && getText()!=null)) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setColor(placeholderColor);
-            Font prev = g2.getFont();
-            g2.setFont(prev.deriveFont(Font.ITALIC));
-            Insets ins = getInsets();
-            int y = getHeight() - ins.bottom - 6;
-            g2.drawString(placeholder, ins.left, y);
-            g2.setFont(prev);
-            g2.dispose();
+    private static Shards sharded(String[] names, ConnectionPool.ConnectionFactory[] factories) {
+        ConnectionPool[] pools = new ConnectionPool[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ConnectionPool.ConnectionFactory f = factories[i];
+            int offset = i + 1;
+            pools[i] = newPool(() -> {
+                Connection c = f.open();
+                try (Statement st = c.createStatement()) {
+                    st.execute("SET SESSION auto_increment_increment = " + ID_STRIDE + ", auto_increment_offset = " + offset);
+                }
+                return c;
+            });
         }
+        return new Shards(names, pools);
     }
 
-    public void setPlaceholderColor(Color c){ this.placeholderColor = c; }
-    public void setShowPlaceholderAlways(boolean v){ this.showPlaceholderAlways = v; }
-}
+    private static ConnectionPool newPool(ConnectionPool.ConnectionFactory factory) {
+        return new ConnectionPool(factory,
+                Integer.getInteger("eventdb.pool.max", 10),
+                Integer.getInteger("eventdb.pool.minIdle", 2),
+                Long.getLong("eventdb.pool.idleTimeoutMs", 5 * 60_000L),
+                Long.getLong("eventdb.pool.borrowTimeoutMs", 5_000L));
+    }
 
-class ValidationUtils {
-    private static final SimpleDateFormat DATE_FMT = new SimpleDateFormat("dd/MM/yyyy");
-    private static final SimpleDateFormat TIME_FMT = new SimpleDateFormat("hh:mm a");
+    private static final LatencyHistogram GET_CONNECTION = Metrics.histogram("db.getConnection");
+    private static final LongAdder GET_CONNECTION_ERRORS = Metrics.counter("db.getConnection.errors");
 
-    static {
-        DATE_FMT.setLenient(false);
-        TIME_FMT.setLenient(false);
-    }
+    // The first shard; callers that are not shard-aware must check shardCount() == 1.
+    public static Connection getConnection() { return getConnection(0); }
 
-    public static boolean isValidPhone(String phone) {
-        return phone != null && phone.matches("\\d{7,15}");
+    public static Connection getConnection(int shard) {
+        long start = System.nanoTime();
+        try {
+            return SHARDS.pools[shard].borrow();
+        } catch (Exception e) {
+            GET_CONNECTION_ERRORS.increment();
+            e.printStackTrace();
+            return null;
+        } finally {
+            GET_CONNECTION.recordSince(start);
+        }
     }
 
-    public static boolean isValidDate(String dateStr) {
-        if (dateStr == null) return false;
-        try { DATE_FMT.parse(dateStr.trim()); return true; }
-        catch (ParseException e) { return false; }
-    }
+    public static int shardCount() { return SHARDS.pools.length; }
+    public static String shardName(int shard) { return SHARDS.names[shard]; }
 
-    public static boolean isValidTime(String timeStr) {
-        if (timeStr == null) return false;
-        try { TIME_FMT.parse(timeStr.trim()); return true; }
-        catch (ParseException e) { return false; }
+    // Bookings live on their venue's shard, so a venue's calendar is always one query on one database.
+    public static int venueShard(String venue) {
+        return SHARDS.ring.shardFor(venue == null ? "" : venue.trim().toLowerCase(Locale.ROOT));
     }
-}
 
-class CustomerForm extends JFrame {
-    public CustomerForm() {
-        setTitle("Customer Details"); setSize(520,420);
-        setLayout(null); setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setLocationRelativeTo(null);
+    public static int customerShard(String phone) {
+        return SHARDS.ring.shardFor("phone:" + CustomerCache.normalizePhone(phone));
+    }
 
-        JLabel header = new JLabel("Enter Customer Details", SwingConstants.CENTER);
-        header.setBounds(60,10,400,30); header.setFont(header.getFont().deriveFont(18f));
+    public static void warmUp() { for (ConnectionPool p : SHARDS.pools) p.warmUp(); }
+    public static void setBorrowTimeout(long millis) { for (ConnectionPool p : SHARDS.pools) p.setBorrowTimeoutMillis(millis); }
+    public static ConnectionPool.Stats poolStats() { return poolStats(0); }
+    public static ConnectionPool.Stats poolStats(int shard) { return SHARDS.pools[shard].stats(); }
 
-        JLabel l1 = new JLabel("Name:"), l2 = new JLabel("Phone:"), l3 = new JLabel("Address:");
-        JTextField t1 = new JTextField(), t2 = new JTextField(), t3 = new JTextField();
-        JButton next = new JButton("Next"); next.setBounds(200,310,120,40);
+    // Points every DAO at a different connection source, e.g. StubJdbc for benchmarks.
+    public static void useConnectionFactory(ConnectionPool.ConnectionFactory factory) {
+        replace(single(factory));
+    }
 
-        l1.setBounds(60,80,150,30); t1.setBounds(220,80,240,30);
-        l2.setBounds(60,130,150,30); t2.setBounds(220,130,240,30);
-        l3.setBounds(60,180,150,30); t3.setBounds(220,180,240,80);
+    public static void useShards(String[] names, ConnectionPool.ConnectionFactory[] factories) {
+        replace(sharded(names, factories));
+    }
 
-        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3); add(next);
+    private static void replace(Shards next) {
+        Shards old = SHARDS;
+        SHARDS = next;
+        for (ConnectionPool p : old.pools) p.close();
+    }
+}
 
-        next.addActionListener(e -> {
-            String name = t1.getText().trim();
-            String phone = t2.getText().trim();
-            String address = t3.getText().trim();
 
-            if (name.isEmpty() || phone.isEmpty() || address.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!ValidationUtils.isValidPhone(phone)) {
-                JOptionPane.showMessageDialog(this, "Enter valid phone number (7-15 digits).", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
+class ShardRing {
+    private final long[] points;
+    private final int[] owners;
+
+    // Each shard owns vnodes points on a 64-bit ring and a key goes to the first point at or after its hash, so adding
+    // a shard moves only the keys that land on its points, about 1/N of them, and only onto the new shard.
+    ShardRing(String[] shards, int vnodes) {
+        TreeMap<Long, Integer> ring = new TreeMap<>();
+        for (int s = 0; s < shards.length; s++)
+            for (int v = 0; v < vnodes; v++) ring.putIfAbsent(hash(shards[s] + "#" + v), s);
+        points = new long[ring.size()];
+        owners = new int[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i++] = e.getValue();
+        }
+    }
 
-            int custId = -1;
-            try {
-                CustomerDAO dao = new CustomerDAO();
-                custId = dao.saveCustomer(name, phone, address);
-            } catch(Exception ex) {
-                
-                JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving customer. Proceeding without DB save.","Warning",JOptionPane.WARNING_MESSAGE);
-            }
+    public int shardFor(String key) {
+        if (owners.length == 1 || points.length == 0) return 0;
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
 
-            EventSelection evSel = new EventSelection(custId);
-            evSel.setVisible(true);
-            setVisible(false);
-        });
+    // FNV-1a over the chars, then the murmur3 finalizer to spread short, similar keys across the ring
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        h ^= h >>> 33; h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33; h *= 0xc4ceb93fe53d2b4fL;
+        return h ^ (h >>> 33);
     }
 }
 
 
-class EventSelection extends JFrame {
-    int custId;
-    public EventSelection(int id) {
-        custId = id;
-        setTitle("Select Event"); setSize(520,640); setLayout(null); setLocationRelativeTo(null);
+class ConnectionPool {
+    interface ConnectionFactory { Connection open() throws SQLException; }
 
-        JLabel header = new JLabel("Select which event you want to organise", SwingConstants.CENTER);
-        header.setBounds(60,10,400,30); header.setFont(header.getFont().deriveFont(16f));
-        add(header);
+    static final class Stats {
+        final int active, idle, max;
+        final long borrows, borrowFailures, created, discarded, totalWaitMillis;
 
-        String[] events = {"Marriage","Birthday Party","Engagement Ceremony","Baby Shower","Anniversary Celebration"};
-        for(int i=0;i<events.length;i++){
-            JButton b = new JButton(events[i]); b.setBounds(160,60+i*95,200,60); b.setFont(b.getFont().deriveFont(14f));
-            add(b);
-            int idx=i;
-            b.addActionListener(e -> {
-                switch(idx){
-                    case 0: new MarriageForm(custId,this).setVisible(true); break;
-                    case 1: new BirthdayForm(custId,this).setVisible(true); break;
-                    case 2: new EngagementForm(custId,this).setVisible(true); break;
-                    case 3: new BabyShowerForm(custId,this).setVisible(true); break;
-                    case 4: new AnniversaryForm(custId,this).setVisible(true); break;
-                }
-                setVisible(false);
-            });
+        Stats(int active, int idle, int max, long borrows, long borrowFailures, long created, long discarded, long totalWaitMillis) {
+            this.active = active; this.idle = idle; this.max = max;
+            this.borrows = borrows; this.borrowFailures = borrowFailures;
+            this.created = created; this.discarded = discarded; this.totalWaitMillis = totalWaitMillis;
         }
-    }
-}
 
+        public double avgWaitMillis() { return borrows == 0 ? 0 : (double) totalWaitMillis / borrows; }
 
-abstract class EventForm extends JFrame {
-    int custId; EventSelection prevPage;
-    EventForm(int custId, EventSelection prevPage) {
-        this.custId=custId; this.prevPage=prevPage;
-        setSize(560,520); setLayout(null); setDefaultCloseOperation(EXIT_ON_CLOSE); setLocationRelativeTo(null);
+        @Override
+        public String toString() {
+            return "active=" + active + ", idle=" + idle + ", max=" + max + ", borrows=" + borrows
+                    + ", borrowFailures=" + borrowFailures + ", created=" + created + ", discarded=" + discarded
+                    + String.format(", avgWait=%.2fms", avgWaitMillis());
+        }
     }
-}
 
+    private static final class Entry {
+        final Connection raw; long lastUsed;
+        Entry(Connection raw) { this.raw = raw; this.lastUsed = System.currentTimeMillis(); }
+    }
 
-class MarriageForm extends EventForm {
-    public MarriageForm(int custId, EventSelection prevPage){
-        super(custId,prevPage); setTitle("Marriage Event");
+    // connections returned within this window are handed out again without a round trip
+    private static final long VALIDATION_SKIP_MS = 500;
+
+    private final ConnectionFactory factory;
+    private final int maxSize, minIdle;
+    private final long idleTimeoutMillis;
+    private volatile long borrowTimeoutMillis;
+    private volatile boolean closed;
+
+    private final ScheduledExecutorService reaper;
+    private final LinkedBlockingDeque<Entry> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder(), borrowFailures = new LongAdder();
+    private final LongAdder created = new LongAdder(), discarded = new LongAdder(), waitNanos = new LongAdder();
+
+    ConnectionPool(ConnectionFactory factory, int maxSize, int minIdle, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-reaper"); t.setDaemon(true); return t;
+        });
+        long period = Math.max(1_000L, idleTimeoutMillis / 2);
+        reaper.scheduleWithFixedDelay(this::reapIdle, period, period, TimeUnit.MILLISECONDS);
+    }
 
-        JLabel header = new JLabel("Marriage Event Details",SwingConstants.CENTER);
-        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+    public void setBorrowTimeoutMillis(long millis) { this.borrowTimeoutMillis = millis; }
 
-        JLabel l1=new JLabel("Bride Name:"), l2=new JLabel("Groom Name:"), l3=new JLabel("Venue:");
-        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+    public void warmUp() {
+        while (idle.size() + active.get() < minIdle) {
+            try { idle.offerLast(new Entry(open())); }
+            catch (SQLException e) { e.printStackTrace(); return; }
+        }
+    }
 
-        JTextField tb=new JTextField(), tg=new JTextField(), tvenue=new JTextField();
-        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
-        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long start = System.nanoTime();
+        boolean acquired;
+        try { acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); acquired = false; }
+        if (!acquired) {
+            borrowFailures.increment();
+            throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis + "ms waiting for a pooled connection");
+        }
+        try {
+            Entry entry;
+            while ((entry = idle.pollFirst()) != null && !isAlive(entry)) discard(entry.raw);
+            Connection raw = entry != null ? entry.raw : open();
+            waitNanos.add(System.nanoTime() - start);
+            borrows.increment();
+            active.incrementAndGet();
+            return wrap(raw);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            borrowFailures.increment();
+            throw e;
+        }
+    }
 
-        tdate.setBounds(260,260,180,30);
-        ttime.setBounds(260,320,180,30);
+    // Stops the reaper and closes idle connections; borrowed ones are closed as they come back.
+    public void close() {
+        closed = true;
+        reaper.shutdownNow();
+        Entry e;
+        while ((e = idle.pollFirst()) != null) discard(e.raw);
+    }
 
-        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
-        confirm.setBounds(140,400,120,50); back.setBounds(310,400,120,50);
+    public Stats stats() {
+        return new Stats(active.get(), idle.size(), maxSize, borrows.sum(), borrowFailures.sum(),
+                created.sum(), discarded.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+    }
 
-        l1.setBounds(60,70,150,30); tb.setBounds(260,70,180,30);
-        l2.setBounds(60,120,150,30); tg.setBounds(260,120,180,30);
-        l3.setBounds(60,170,150,30); tvenue.setBounds(260,170,180,30);
-        l4.setBounds(60,260,150,30);
-        l5.setBounds(60,320,150,30);
+    private Connection open() throws SQLException {
+        Connection c = factory.open();
+        if (c == null) throw new SQLException("Connection factory returned null");
+        created.increment();
+        return c;
+    }
 
-        add(header); add(l1); add(tb); add(l2); add(tg); add(l3); add(tvenue);
-        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
+    private boolean isAlive(Entry e) {
+        if (System.currentTimeMillis() - e.lastUsed < VALIDATION_SKIP_MS) return true;
+        try { return e.raw.isValid(2); } catch (SQLException ex) { return false; }
+    }
 
-        confirm.addActionListener(e -> {
-            String bride = tb.getText().trim();
-            String groom = tg.getText().trim();
-            String venue = tvenue.getText().trim();
-            String date = tdate.getText().trim();
-            String time = ttime.getText().trim();
+    private void discard(Connection raw) {
+        discarded.increment();
+        try { raw.close(); } catch (SQLException ignored) {}
+    }
 
-            if (bride.isEmpty() || groom.isEmpty() || venue.isEmpty() || date.isEmpty() || time.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!ValidationUtils.isValidDate(date)) {
-                JOptionPane.showMessageDialog(this, "Enter valid date in DD/MM/YYYY format.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!ValidationUtils.isValidTime(time)) {
-                JOptionPane.showMessageDialog(this, "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
+    private void release(Connection raw) {
+        active.decrementAndGet();
+        try {
+            if (raw.isClosed()) { discarded.increment(); return; }
+            if (closed) { discard(raw); return; }
+            if (!raw.getAutoCommit()) { raw.rollback(); raw.setAutoCommit(true); }
+            Entry entry = new Entry(raw);
+            idle.offerFirst(entry);
+            // close() may have drained the idle list between the check and the offer
+            if (closed && idle.removeFirstOccurrence(entry)) discard(raw);
+        } catch (SQLException e) {
+            discard(raw);
+        } finally {
+            permits.release();
+        }
+    }
 
-            MarriageEvent ev=new MarriageEvent();
-            ev.setBride(bride); ev.setGroom(groom);
-            ev.setDetails(date,time,venue);
+    private void reapIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minIdle) {
+            Entry e = it.next();
+            if (now - e.lastUsed > idleTimeoutMillis && idle.removeLastOccurrence(e)) discard(e.raw);
+        }
+    }
 
-            try {
-                if(custId!=-1) new CustomerDAO().saveBooking(custId,"Marriage",ev.getDate(),ev.getTime(),ev.calculatePrice(),ev.getVenue(),ev.extraDetails());
-            } catch(Exception ex) {
-                JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving booking. Booking not saved in DB.","Warning",JOptionPane.WARNING_MESSAGE);
+    private Connection wrap(Connection raw) {
+        AtomicBoolean closed = new AtomicBoolean();
+        InvocationHandler h = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) release(raw);
+                    return null;
+                case "isClosed":
+                    return closed.get() || raw.isClosed();
+                default:
+                    if (closed.get()) throw new SQLException("Connection already returned to pool");
+                    try { return method.invoke(raw, args); }
+                    catch (InvocationTargetException ex) { throw ex.getCause(); }
             }
-
-            new PaymentPage(custId,"Marriage",ev,prevPage).setVisible(true);
-            dispose();
-        });
-
-        back.addActionListener(e -> { prevPage.setVisible(true); dispose(); });
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, h);
     }
 }
 
 
-class BirthdayForm extends EventForm {
-    public BirthdayForm(int custId, EventSelection prevPage){
-        super(custId,prevPage); setTitle("Birthday Party");
-
-        JLabel header = new JLabel("Birthday Party Details",SwingConstants.CENTER);
-        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+class CustomerDAO {
+    static final String UPSERT_CUSTOMER_SQL = "INSERT INTO customers (name, phone, address) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE customer_id = LAST_INSERT_ID(customer_id), name = VALUES(name), address = VALUES(address)";
+
+    private static final CustomerCache CUSTOMERS = new CustomerCache(
+            Integer.getInteger("eventdb.customerCache.size", 10_000),
+            Long.getLong("eventdb.customerCache.ttlMs", 30 * 60_000L));
+
+    private static final LatencyHistogram SAVE_CUSTOMER = Metrics.histogram("dao.saveCustomer");
+    private static final LatencyHistogram SAVE_BOOKING = Metrics.histogram("dao.saveBooking");
+    private static final LongAdder SAVE_CUSTOMER_ERRORS = Metrics.counter("dao.saveCustomer.errors");
+    private static final LongAdder SAVE_BOOKING_ERRORS = Metrics.counter("dao.saveBooking.errors");
+    private static final LongAdder CUSTOMER_CACHE_HITS = Metrics.counter("dao.saveCustomer.cacheHits");
+    private static final LatencyHistogram SAVE_CUSTOMER_AND_BOOKING = Metrics.histogram("dao.saveCustomerAndBooking");
+    private static final LongAdder DUPLICATE_BOOKINGS = Metrics.counter("dao.saveCustomerAndBooking.duplicates");
+
+    static final class Saved {
+        final int customerId, bookingId;
+        // true when the idempotency key was already stored and this is the first booking, not a new one
+        final boolean duplicate;
+        Saved(int customerId, int bookingId) { this(customerId, bookingId, false); }
+        Saved(int customerId, int bookingId, boolean duplicate) { this.customerId = customerId; this.bookingId = bookingId; this.duplicate = duplicate; }
+    }
 
-        JLabel l0=new JLabel("Birthday Name:"), l1=new JLabel("Venue:");
-        JLabel l2=new JLabel("Date:"), l3=new JLabel("Time:");
+    // -Deventdb.writeBehind=true sends the booking insert of each unit of work to its venue shard's batch writer
+    private static final boolean WRITE_BEHIND_MODE = Boolean.getBoolean("eventdb.writeBehind");
+    // one batch writer per shard, so a slow database only backs up its own venues
+    private static final ConcurrentHashMap<Integer, BookingWriteBehind> WRITE_BEHIND = new ConcurrentHashMap<>();
+
+    private static BookingWriteBehind writeBehind(int shard) {
+        return WRITE_BEHIND.computeIfAbsent(shard, s -> new BookingWriteBehind(s,
+                Integer.getInteger("eventdb.writeBehind.batchSize", 50),
+                Long.getLong("eventdb.writeBehind.maxDelayMs", 20L),
+                Integer.getInteger("eventdb.writeBehind.capacity", 10_000),
+                Long.getLong("eventdb.writeBehind.enqueueTimeoutMs", 2_000L)));
+    }
 
-        JTextField tb=new JTextField(), tvenue=new JTextField();
+    // Repeat customers (same phone) resolve to their existing customer_id, from memory when cached and unchanged.
+    public int saveCustomer(String name, String phone, String address) throws Exception {
+        long start = System.nanoTime();
+        String key = CustomerCache.normalizePhone(phone);
+        int cached = CUSTOMERS.get(key, name, address);
+        if (cached > 0) {
+            CUSTOMER_CACHE_HITS.increment();
+            SAVE_CUSTOMER.recordSince(start);
+            return cached;
+        }
+        try (Connection con = DBConnection.getConnection(DBConnection.customerShard(key))) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            int id = resolveCustomer(con, name, key, address);
+            if (id <= 0) return -1;
+            CUSTOMERS.put(key, id, name, address);
+            SearchIndex.get().addCustomer(id, name, key);
+            return id;
+        } catch (Exception e) {
+            SAVE_CUSTOMER_ERRORS.increment();
+            throw e;
+        } finally {
+            SAVE_CUSTOMER.recordSince(start);
+        }
+    }
+
+    public void updateCustomer(int customerId, String name, String phone, String address) throws Exception {
+        String key = CustomerCache.normalizePhone(phone);
+        int home = DBConnection.customerShard(key);
+        try {
+            // a changed phone can point at a different home shard; the row stays where it is until --rebalance moves it
+            int updated = updateCustomer(home, customerId, name, key, address);
+            for (int s = 0; s < DBConnection.shardCount() && updated == 0; s++)
+                if (s != home) updated = updateCustomer(s, customerId, name, key, address);
+            SearchIndex.get().addCustomer(customerId, name, key);
+        } finally {
+            CUSTOMERS.invalidateId(customerId);
+            CUSTOMERS.invalidate(key);
+        }
+    }
+
+    private static int updateCustomer(int shard, int customerId, String name, String phone, String address) throws Exception {
+        try (Connection con = DBConnection.getConnection(shard)) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            try (PreparedStatement ps = con.prepareStatement("UPDATE customers SET name = ?, phone = ?, address = ? WHERE customer_id = ?")) {
+                ps.setString(1, name);
+                ps.setString(2, phone);
+                ps.setString(3, address);
+                ps.setInt(4, customerId);
+                return ps.executeUpdate();
+            }
+        }
+    }
+
+    // The phone identifies the customer. A returning customer whose name or address changed has the row updated, so
+    // the booking is not filed under the old details.
+    static int resolveCustomer(Connection con, String name, String phone, String address) throws SQLException {
+        int id = -1;
+        boolean changed = false;
+        try (PreparedStatement ps = con.prepareStatement("SELECT customer_id, name, address FROM customers WHERE phone = ? LIMIT 1")) {
+            ps.setString(1, phone);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    id = rs.getInt(1);
+                    changed = !CustomerCache.same(name, rs.getString(2)) || !CustomerCache.same(address, rs.getString(3));
+                }
+            }
+        }
+        if (id <= 0) return upsertCustomer(con, name, phone, address);
+        if (changed) {
+            try (PreparedStatement ps = con.prepareStatement("UPDATE customers SET name = ?, address = ? WHERE customer_id = ?")) {
+                ps.setString(1, name);
+                ps.setString(2, address);
+                ps.setInt(3, id);
+                ps.executeUpdate();
+            }
+        }
+        return id;
+    }
+
+    // Relies on uk_customers_phone; LAST_INSERT_ID(customer_id) makes the duplicate path return the existing id.
+    static int upsertCustomer(Connection con, String name, String phone, String address) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(UPSERT_CUSTOMER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.setString(2, phone);
+            ps.setString(3, address);
+            int affected = ps.executeUpdate();
+            if (affected == 0) throw new SQLException("Insert failed, no rows affected.");
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) return rs.getInt(1);
+                else return -1;
+            }
+        }
+    }
+
+    static final String INSERT_BOOKING_SQL = "INSERT INTO bookings (customer_id, event_type, event_date, event_time, price, venue, extra_details) VALUES (?,?,?,?,?,?,?)";
+    static final String INSERT_KEYED_BOOKING_SQL = "INSERT INTO bookings (customer_id, event_type, event_date, event_time, price, venue, extra_details, idempotency_key) VALUES (?,?,?,?,?,?,?,?)";
+
+    // One connection and one commit for the pair: resolves the customer (knownCustomerId > 0 skips that), inserts the
+    // booking under the resulting id, and rolls both back together if anything fails. A repeat of an idempotencyKey
+    // already stored hits uk_bookings_idempotency_key and returns the first booking instead of inserting another.
+    // When the customer's home shard is not the venue's, the customer is committed there first; the phone upsert
+    // makes a retry after a failed booking land on that same row.
+    public Saved saveCustomerAndBooking(int knownCustomerId, String name, String phone, String address,
+                                        String type, LocalDate date, LocalTime time, double price, String venue, String extra,
+                                        String idempotencyKey) throws Exception {
+        if (WRITE_BEHIND_MODE) {
+            try {
+                return saveCustomerAndBookingAsync(knownCustomerId, name, phone, address, type, date, time, price, venue, extra, idempotencyKey).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        long start = System.nanoTime();
+        String key = CustomerCache.normalizePhone(phone);
+        int custId = knownCustomerId > 0 ? knownCustomerId : CUSTOMERS.get(key, name, address);
+        boolean newToCache = custId <= 0;
+        int shard = DBConnection.venueShard(venue), home = DBConnection.customerShard(key);
+        int bookingId;
+        // never hold one shard's connection while waiting for another's: two bookings crossing in opposite
+        // directions would each hold what the other needs
+        if (custId <= 0 && home != shard) {
+            try (Connection homeCon = DBConnection.getConnection(home)) {
+                if (homeCon == null) throw new SQLTransientConnectionException("JDBC Not Connected");
+                custId = resolveCustomer(homeCon, name, key, address);
+            } catch (Exception e) {
+                SAVE_BOOKING_ERRORS.increment();
+                SAVE_CUSTOMER_AND_BOOKING.recordSince(start);
+                throw e;
+            }
+        }
+        try (Connection con = DBConnection.getConnection(shard)) {
+            if (con == null) throw new SQLTransientConnectionException("JDBC Not Connected");
+            con.setAutoCommit(false);
+            try {
+                if (custId <= 0) custId = resolveCustomer(con, name, key, address);
+                if (custId <= 0) throw new SQLException("Customer insert returned no id");
+                try (PreparedStatement ps = con.prepareStatement(INSERT_KEYED_BOOKING_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    bindBooking(ps, custId, type, date, time, price, venue, extra);
+                    ps.setString(8, idempotencyKey);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) { bookingId = rs.next() ? rs.getInt(1) : 0; }
+                }
+                con.commit();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                con.rollback();
+                Saved first = idempotencyKey == null ? null : findByIdempotencyKey(con, idempotencyKey);
+                if (first == null) throw e;
+                DUPLICATE_BOOKINGS.increment();
+                return first;
+            } catch (Exception e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            SAVE_BOOKING_ERRORS.increment();
+            throw e;
+        } finally {
+            SAVE_CUSTOMER_AND_BOOKING.recordSince(start);
+        }
+        // only committed ids reach the cache and the in-memory indexes
+        if (newToCache) {
+            CUSTOMERS.put(key, custId, name, address);
+            SearchIndex.get().addCustomer(custId, name, key);
+        }
+        indexBooking(bookingId, custId, type, date, time, price, venue, extra);
+        return new Saved(custId, bookingId);
+    }
+
+    // Write-behind flavour of saveCustomerAndBooking. The customer is resolved on its home shard and committed on its
+    // own (the phone upsert makes a retry land on the same row); the booking insert joins the venue shard's next batch,
+    // so concurrent bookings share one round trip and one commit. The future completes once that batch has committed.
+    public CompletableFuture<Saved> saveCustomerAndBookingAsync(int knownCustomerId, String name, String phone, String address,
+                                                              String type, LocalDate date, LocalTime time, double price, String venue,
+                                                              String extra, String idempotencyKey) {
+        long start = System.nanoTime();
+        String key = CustomerCache.normalizePhone(phone);
+        int known = knownCustomerId > 0 ? knownCustomerId : CUSTOMERS.get(key, name, address);
+        boolean newToCache = known <= 0;
+        if (known <= 0) {
+            try (Connection con = DBConnection.getConnection(DBConnection.customerShard(key))) {
+                if (con == null) throw new SQLTransientConnectionException("JDBC Not Connected");
+                known = resolveCustomer(con, name, key, address);
+                if (known <= 0) throw new SQLException("Customer insert returned no id");
+            } catch (Exception e) {
+                SAVE_BOOKING_ERRORS.increment();
+                SAVE_CUSTOMER_AND_BOOKING.recordSince(start);
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        int custId = known;
+        return writeBehind(DBConnection.venueShard(venue)).submit(custId, type, date, time, price, venue, extra, idempotencyKey)
+                .whenComplete((saved, e) -> {
+                    SAVE_CUSTOMER_AND_BOOKING.recordSince(start);
+                    if (e != null) SAVE_BOOKING_ERRORS.increment();
+                })
+                .thenApply(saved -> {
+                    if (newToCache) {
+                        CUSTOMERS.put(key, custId, name, address);
+                        SearchIndex.get().addCustomer(custId, name, key);
+                    }
+                    if (saved.duplicate) DUPLICATE_BOOKINGS.increment();
+                    else indexBooking(saved.bookingId, custId, type, date, time, price, venue, extra);
+                    return saved;
+                });
+    }
+
+    static Saved findByIdempotencyKey(Connection con, String idempotencyKey) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT customer_id, booking_id FROM bookings WHERE idempotency_key = ?")) {
+            ps.setString(1, idempotencyKey);
+            try (ResultSet rs = ps.executeQuery()) { return rs.next() ? new Saved(rs.getInt(1), rs.getInt(2), true) : null; }
+        }
+    }
+
+    public void saveBooking(int custId, String type, LocalDate date, LocalTime time, double price, String venue, String extra) throws Exception {
+        long start = System.nanoTime();
+        try (Connection con = DBConnection.getConnection(DBConnection.venueShard(venue))) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            try (PreparedStatement ps = con.prepareStatement(INSERT_BOOKING_SQL)) {
+                bindBooking(ps, custId, type, date, time, price, venue, extra);
+                ps.executeUpdate();
+            }
+        } catch (Exception e) {
+            SAVE_BOOKING_ERRORS.increment();
+            throw e;
+        } finally {
+            SAVE_BOOKING.recordSince(start);
+        }
+        indexBooking(0, custId, type, date, time, price, venue, extra);
+    }
+
+    // Keeps the in-memory indexes in step with rows that reached the database.
+    static void indexBooking(int bookingId, int custId, String type, LocalDate date, LocalTime time, double price, String venue, String extra) {
+        AvailabilityIndex.get().record(venue, date, time);
+        SearchIndex.get().addBooking(new BookingRecord(bookingId, custId, type, date, time, price, venue, extra));
+        BookingAnalytics.get().append(type, date, price, venue, extra);
+    }
+
+    private static final Comparator<BookingRecord> BY_DATE = Comparator.comparing((BookingRecord r) -> r.date, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(r -> r.time, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<BookingRecord> BY_ID = Comparator.comparingInt(r -> r.id);
+
+    // Both lookups are range seeks on idx_bookings_venue_date / idx_bookings_date; a venue is read from its own shard.
+    public List<BookingRecord> findBookings(String venue, LocalDate from, LocalDate to) throws Exception {
+        return queryBookings(DBConnection.venueShard(venue), "SELECT " + BookingRecord.COLUMNS + " FROM bookings WHERE venue = ? AND event_date BETWEEN ? AND ? ORDER BY event_date, event_time",
+                0, venue, java.sql.Date.valueOf(from), java.sql.Date.valueOf(to));
+    }
+
+    public List<BookingRecord> findBookingsBetween(LocalDate from, LocalDate to) throws Exception {
+        return scatter(BY_DATE, Integer.MAX_VALUE, "SELECT " + BookingRecord.COLUMNS + " FROM bookings WHERE event_date BETWEEN ? AND ? ORDER BY event_date, event_time",
+                0, java.sql.Date.valueOf(from), java.sql.Date.valueOf(to));
+    }
+
+    // Keyset page: seeks past afterId on the primary key (or on idx_bookings_type, which carries booking_id),
+    // so the millionth row costs the same to reach as the first, unlike OFFSET. Every shard returns its first limit
+    // rows past afterId, and the first limit of those merged are the page.
+    public List<BookingRecord> findBookingsPage(BookingFilter filter, int afterId, int limit) throws Exception {
+        List<Object> params = new ArrayList<>();
+        params.add(afterId);
+        StringBuilder sql = new StringBuilder("SELECT " + BookingRecord.COLUMNS + " FROM bookings WHERE booking_id > ?");
+        filter.appendTo(sql, params);
+        sql.append(" ORDER BY booking_id LIMIT ?");
+        params.add(limit);
+        return scatter(BY_ID, limit, sql.toString(), limit, params.toArray());
+    }
+
+    private static final ExecutorService SHARD_READS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "shard-read"); t.setDaemon(true); return t;
+    });
+
+    // Runs the query on every shard at once and merges the already sorted results, keeping the first limit rows.
+    private List<BookingRecord> scatter(Comparator<BookingRecord> order, int limit, String sql, int fetchSize, Object... params) throws Exception {
+        int shards = DBConnection.shardCount();
+        if (shards == 1) return queryBookings(0, sql, fetchSize, params);
+        List<Callable<List<BookingRecord>>> reads = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            int shard = s;
+            reads.add(() -> queryBookings(shard, sql, fetchSize, params));
+        }
+        List<BookingRecord> merged = new ArrayList<>();
+        for (Future<List<BookingRecord>> f : SHARD_READS.invokeAll(reads)) {
+            try {
+                merged.addAll(f.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        merged.sort(order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    private List<BookingRecord> queryBookings(int shard, String sql, int fetchSize, Object... params) throws Exception {
+        try (Connection con = DBConnection.getConnection(shard)) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+                ps.setFetchSize(fetchSize);
+                List<BookingRecord> out = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(BookingRecord.read(rs));
+                }
+                return out;
+            }
+        }
+    }
+
+    static void bindBooking(PreparedStatement ps, int custId, String type, LocalDate date, LocalTime time, double price, String venue, String extra) throws SQLException {
+        if (custId > 0) ps.setInt(1, custId);
+        else ps.setNull(1, Types.INTEGER);
+        ps.setString(2, type);
+        ps.setDate(3, java.sql.Date.valueOf(date));
+        ps.setTime(4, java.sql.Time.valueOf(time));
+        ps.setDouble(5, price);
+        ps.setString(6, venue);
+        ps.setString(7, extra);
+    }
+}
+
+
+class DedupeCache<V> {
+    private static final class Entry<V> {
+        final String key;
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final long expiresAt;
+        Entry(String key, long expiresAt) { this.key = key; this.expiresAt = expiresAt; }
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongAdder hits;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    // insertion order; with one TTL for every entry the head is always the next to expire. Failed entries leave
+    // entries at once but stay queued until they reach the head, so the size bound counts the queue, not the map.
+    private final ConcurrentLinkedQueue<Entry<V>> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    DedupeCache(String name, int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.hits = Metrics.counter(name + ".hits");
+    }
+
+    // The first caller for a key starts work; callers arriving while it is in flight or after it succeeded get the
+    // same future. A failure is forgotten once the work's own future settles, so a retry runs the work again.
+    public CompletableFuture<V> run(String key, Callable<CompletableFuture<V>> work) {
+        long now = System.currentTimeMillis();
+        Entry<V> mine = new Entry<>(key, now + ttlMillis);
+        Entry<V> e = entries.compute(key, (k, cur) -> cur != null && cur.expiresAt > now ? cur : mine);
+        if (e != mine) {
+            hits.increment();
+            return e.result;
+        }
+        order.add(mine);
+        queued.incrementAndGet();
+        evict(now);
+        CompletableFuture<V> started;
+        try {
+            started = work.call();
+        } catch (Exception ex) {
+            started = CompletableFuture.failedFuture(ex);
+        }
+        started.whenComplete((v, ex) -> {
+            if (ex == null) { mine.result.complete(v); return; }
+            entries.remove(key, mine);
+            mine.result.completeExceptionally(ex);
+        });
+        return mine.result;
+    }
+
+    public boolean contains(String key) {
+        Entry<V> e = entries.get(key);
+        return e != null && e.expiresAt > System.currentTimeMillis() && !e.result.isCompletedExceptionally();
+    }
+
+    public int size() { return entries.size(); }
+
+    private void evict(long now) {
+        for (Entry<V> head = order.peek(); head != null && (head.expiresAt <= now || queued.get() > maxSize); head = order.peek()) {
+            if (order.remove(head)) {
+                queued.decrementAndGet();
+                entries.remove(head.key, head);
+            }
+        }
+    }
+}
+
+
+class CustomerCache {
+    private static final class Entry {
+        final int id; final long expiresAt;
+        final String name, address;
+        Entry(int id, String name, String address, long expiresAt) { this.id = id; this.name = name; this.address = address; this.expiresAt = expiresAt; }
+    }
+
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    CustomerCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) { return size() > maxSize; }
+        };
+    }
+
+    static String normalizePhone(String phone) {
+        if (phone == null) return "";
+        StringBuilder sb = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // Returns the cached customer_id, or -1 on a miss, an expired entry, or details that no longer match (the caller
+    // then goes to the database, which updates the row).
+    public synchronized int get(String phone, String name, String address) {
+        Entry e = entries.get(phone);
+        if (e == null) return -1;
+        if (e.expiresAt < System.currentTimeMillis() || !same(e.name, name) || !same(e.address, address)) { entries.remove(phone); return -1; }
+        return e.id;
+    }
+
+    public synchronized void put(String phone, int id, String name, String address) {
+        entries.put(phone, new Entry(id, name, address, System.currentTimeMillis() + ttlMillis));
+    }
+
+    static boolean same(String a, String b) { return a == null ? b == null : a.equals(b); }
+
+    public synchronized void invalidate(String phone) { entries.remove(phone); }
+
+    public synchronized void invalidateId(int id) { entries.values().removeIf(e -> e.id == id); }
+}
+
+
+class BookingRecord {
+    static final String COLUMNS = "booking_id, customer_id, event_type, event_date, event_time, price, venue, extra_details";
+
+    final int id, customerId;
+    final String eventType, venue, extraDetails;
+    final LocalDate date;
+    final LocalTime time;
+    final double price;
+
+    BookingRecord(int id, int customerId, String eventType, LocalDate date, LocalTime time, double price, String venue, String extraDetails) {
+        this.id = id; this.customerId = customerId; this.eventType = eventType; this.date = date; this.time = time;
+        this.price = price; this.venue = venue; this.extraDetails = extraDetails;
+    }
+
+    // Reads a row selected with COLUMNS, in that order.
+    static BookingRecord read(ResultSet rs) throws SQLException {
+        java.sql.Date d = rs.getDate(4);
+        Time t = rs.getTime(5);
+        return new BookingRecord(rs.getInt(1), rs.getInt(2), rs.getString(3),
+                d == null ? null : d.toLocalDate(), t == null ? null : t.toLocalTime(),
+                rs.getDouble(6), rs.getString(7), rs.getString(8));
+    }
+}
+
+
+class BookingFilter {
+    static final BookingFilter ALL = new BookingFilter(null, null, null, null);
+
+    // null fields are not filtered on
+    final String eventType, venue;
+    final LocalDate from, to;
+
+    BookingFilter(String eventType, String venue, LocalDate from, LocalDate to) {
+        this.eventType = eventType; this.venue = venue; this.from = from; this.to = to;
+    }
+
+    void appendTo(StringBuilder sql, List<Object> params) {
+        if (eventType != null) { sql.append(" AND event_type = ?"); params.add(eventType); }
+        if (venue != null) { sql.append(" AND venue = ?"); params.add(venue); }
+        if (from != null) { sql.append(" AND event_date >= ?"); params.add(java.sql.Date.valueOf(from)); }
+        if (to != null) { sql.append(" AND event_date <= ?"); params.add(java.sql.Date.valueOf(to)); }
+    }
+}
+
+
+class BookingSchema {
+    private static final String[] DDL = {
+        "CREATE TABLE IF NOT EXISTS customers ("
+            + "customer_id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) NOT NULL, "
+            + "phone VARCHAR(15) NOT NULL, address VARCHAR(255))",
+        "CREATE TABLE IF NOT EXISTS bookings ("
+            + "booking_id INT AUTO_INCREMENT PRIMARY KEY, customer_id INT NULL, event_type VARCHAR(40) NOT NULL, "
+            + "event_date DATE NULL, event_time TIME NULL, price DECIMAL(12,2) NOT NULL, "
+            + "venue VARCHAR(120), extra_details VARCHAR(500))"
+    };
+
+    public static void migrate() {
+        for (int s = 0; s < DBConnection.shardCount(); s++) {
+            try (Connection con = DBConnection.getConnection(s)) {
+                if (con != null) migrate(con);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        if (DBConnection.shardCount() == 1) return;
+        try {
+            alignIdCounters();
+        } catch (Exception e) {
+            System.err.println("Could not align id counters across shards: " + e.getMessage());
+        }
+    }
+
+    // The id stride only separates ids generated after sharding; rows from the original database keep 1..N. Lifting
+    // every shard's AUTO_INCREMENT past the highest id on any shard keeps new ids clear of those. Counters only move
+    // up, so once every shard has been aligned this is a no-op.
+    static void alignIdCounters() throws Exception {
+        alignIdCounter("customers", "customer_id");
+        alignIdCounter("bookings", "booking_id");
+    }
+
+    private static void alignIdCounter(String table, String pk) throws Exception {
+        int shards = DBConnection.shardCount();
+        long[] max = new long[shards];
+        long global = 0;
+        for (int s = 0; s < shards; s++) {
+            try (Connection con = DBConnection.getConnection(s)) {
+                if (con == null) throw new Exception("JDBC Not Connected to " + DBConnection.shardName(s));
+                try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(" + pk + "), 0) FROM " + table)) {
+                    max[s] = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            global = Math.max(global, max[s]);
+        }
+        for (int s = 0; s < shards; s++) {
+            if (max[s] >= global) continue;
+            try (Connection con = DBConnection.getConnection(s); Statement st = con.createStatement()) {
+                st.executeUpdate("ALTER TABLE " + table + " AUTO_INCREMENT = " + (global + 1));
+            }
+        }
+    }
+
+    static void migrate(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            for (String ddl : DDL) st.executeUpdate(ddl);
+        }
+        migrateLegacyDateColumns(con);
+        ensureIndex(con, "bookings", "idx_bookings_venue_date", "venue, event_date");
+        ensureIndex(con, "bookings", "idx_bookings_date", "event_date");
+        ensureIndex(con, "bookings", "idx_bookings_type", "event_type");
+        try {
+            ensureIndex(con, "customers", "uk_customers_phone", "phone", true);
+        } catch (SQLException e) {
+            // existing duplicate phones block the unique key; lookups by phone still avoid new duplicates
+            System.err.println("Could not add uk_customers_phone: " + e.getMessage());
+        }
+        ensureColumn(con, "bookings", "journal_ref", "VARCHAR(36) NULL");
+        ensureIndex(con, "bookings", "uk_bookings_journal_ref", "journal_ref", true);
+        ensureColumn(con, "bookings", "idempotency_key", "VARCHAR(200) NULL");
+        ensureIndex(con, "bookings", "uk_bookings_idempotency_key", "idempotency_key", true);
+    }
+
+    // Older tables stored event_date/event_time as "dd/MM/yyyy" / "hh:mm a" strings; convert them into typed columns.
+    // The original strings stay in event_date_legacy/event_time_legacy (made nullable so new inserts can skip them),
+    // so rows that did not parse can still be fixed by hand and the migration can be undone.
+    static void migrateLegacyDateColumns(Connection con) throws SQLException {
+        String dateType = columnType(con, "bookings", "event_date");
+        if (dateType == null || !(dateType.contains("CHAR") || dateType.contains("TEXT"))) return;
+        String pk = primaryKey(con, "bookings");
+        try (Statement st = con.createStatement()) {
+            if (columnType(con, "bookings", "event_date_typed") == null)
+                st.executeUpdate("ALTER TABLE bookings ADD COLUMN event_date_typed DATE NULL, ADD COLUMN event_time_typed TIME NULL");
+
+            int converted = 0, unparseable = 0;
+            con.setAutoCommit(false);
+            try (ResultSet rs = st.executeQuery("SELECT " + pk + ", event_date, event_time FROM bookings");
+                 PreparedStatement upd = con.prepareStatement("UPDATE bookings SET event_date_typed = ?, event_time_typed = ? WHERE " + pk + " = ?")) {
+                while (rs.next()) {
+                    LocalDate d = ValidationUtils.parseDate(rs.getString(2));
+                    LocalTime t = ValidationUtils.parseTime(rs.getString(3));
+                    if (d == null || t == null) unparseable++;
+                    if (d != null) upd.setDate(1, java.sql.Date.valueOf(d)); else upd.setNull(1, Types.DATE);
+                    if (t != null) upd.setTime(2, Time.valueOf(t)); else upd.setNull(2, Types.TIME);
+                    upd.setObject(3, rs.getObject(1));
+                    upd.addBatch();
+                    if (++converted % 500 == 0) upd.executeBatch();
+                }
+                upd.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+
+            st.executeUpdate("ALTER TABLE bookings "
+                    + "CHANGE COLUMN event_date event_date_legacy " + legacyDefinition(con, "event_date") + ", "
+                    + "CHANGE COLUMN event_time event_time_legacy " + legacyDefinition(con, "event_time") + ", "
+                    + "CHANGE COLUMN event_date_typed event_date DATE NULL, CHANGE COLUMN event_time_typed event_time TIME NULL");
+            System.err.println("Migrated " + converted + " bookings to typed date/time columns (" + unparseable
+                    + " unparseable, left NULL; original values kept in event_date_legacy/event_time_legacy)");
+        }
+    }
+
+    // Same type and length as the legacy string column, but nullable.
+    private static String legacyDefinition(Connection con, String column) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getColumns(con.getCatalog(), null, "bookings", column)) {
+            if (!rs.next()) throw new SQLException("bookings." + column + " not found");
+            String type = rs.getString("TYPE_NAME").toUpperCase(Locale.ROOT);
+            return (type.contains("TEXT") ? type : type + "(" + rs.getInt("COLUMN_SIZE") + ")") + " NULL";
+        }
+    }
+
+    static void ensureIndex(Connection con, String table, String name, String columns) throws SQLException {
+        ensureIndex(con, table, name, columns, false);
+    }
+
+    static void ensureIndex(Connection con, String table, String name, String columns, boolean unique) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getIndexInfo(con.getCatalog(), null, table, false, false)) {
+            while (rs.next()) if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return;
+        }
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    static void ensureColumn(Connection con, String table, String column, String definition) throws SQLException {
+        if (columnType(con, table, column) != null) return;
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    static String columnType(Connection con, String table, String column) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getColumns(con.getCatalog(), null, table, column)) {
+            return rs.next() ? rs.getString("TYPE_NAME").toUpperCase(Locale.ROOT) : null;
+        }
+    }
+
+    private static String primaryKey(Connection con, String table) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getPrimaryKeys(con.getCatalog(), null, table)) {
+            if (rs.next()) return rs.getString("COLUMN_NAME");
+        }
+        throw new SQLException("Table " + table + " has no primary key; cannot migrate");
+    }
+}
+
+
+// Batches the booking inserts of one shard: a background writer drains the bounded queue into one executeBatch and
+// one commit, flushing at batchSize or after maxDelayMillis, whichever comes first.
+class BookingWriteBehind {
+    private static final LongAdder BATCHES = Metrics.counter("dao.writeBehind.batches"), ROWS = Metrics.counter("dao.writeBehind.rows");
+
+    private static final class Pending {
+        final int custId; final String type, venue, extra, idempotencyKey; final LocalDate date; final LocalTime time; final double price;
+        final CompletableFuture<CustomerDAO.Saved> result = new CompletableFuture<>();
+
+        Pending(int custId, String type, LocalDate date, LocalTime time, double price, String venue, String extra, String idempotencyKey) {
+            this.custId = custId; this.type = type; this.date = date; this.time = time;
+            this.price = price; this.venue = venue; this.extra = extra; this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    private final int shard, batchSize;
+    private final long maxDelayMillis, enqueueTimeoutMillis;
+    private final ArrayBlockingQueue<Pending> queue;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    BookingWriteBehind(int shard, int batchSize, long maxDelayMillis, int capacity, long enqueueTimeoutMillis) {
+        this.shard = shard;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayMillis = maxDelayMillis;
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public CompletableFuture<CustomerDAO.Saved> submit(int custId, String type, LocalDate date, LocalTime time, double price,
+                                                       String venue, String extra, String idempotencyKey) {
+        if (started.compareAndSet(false, true)) {
+            Thread t = new Thread(this::runWriter, "booking-writer-" + shard);
+            t.setDaemon(true);
+            t.start();
+        }
+        Pending p = new Pending(custId, type, date, time, price, venue, extra, idempotencyKey);
+        try {
+            // a full queue blocks the caller for up to enqueueTimeoutMillis before rejecting
+            if (!queue.offer(p, enqueueTimeoutMillis, TimeUnit.MILLISECONDS))
+                p.result.completeExceptionally(new SQLTransientException("Booking queue full"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.result.completeExceptionally(e);
+        }
+        return p.result;
+    }
+
+    public int pending() { return queue.size(); }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) break;
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                for (Pending p : batch) p.result.completeExceptionally(t);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        BATCHES.increment();
+        ROWS.add(batch.size());
+        try (Connection con = DBConnection.getConnection(shard)) {
+            if (con == null) throw new SQLTransientConnectionException("JDBC Not Connected");
+            try (PreparedStatement ps = con.prepareStatement(CustomerDAO.INSERT_KEYED_BOOKING_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                con.setAutoCommit(false);
+                try {
+                    for (Pending p : batch) {
+                        bind(ps, p);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    int[] ids = new int[batch.size()];
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < ids.length && rs.next(); i++) ids[i] = rs.getInt(1);
+                    }
+                    con.commit();
+                    for (int i = 0; i < batch.size(); i++) batch.get(i).result.complete(new CustomerDAO.Saved(batch.get(i).custId, ids[i]));
+                    return;
+                } catch (SQLException batchFailure) {
+                    con.rollback();
+                    ps.clearBatch();
+                } finally {
+                    con.setAutoCommit(true);
+                }
+                // one bad row, usually a retried idempotency key, must not sink the whole batch: retry row by row
+                for (Pending p : batch) {
+                    try {
+                        bind(ps, p);
+                        ps.executeUpdate();
+                        try (ResultSet rs = ps.getGeneratedKeys()) { p.result.complete(new CustomerDAO.Saved(p.custId, rs.next() ? rs.getInt(1) : 0)); }
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        CustomerDAO.Saved first = p.idempotencyKey == null ? null : CustomerDAO.findByIdempotencyKey(con, p.idempotencyKey);
+                        if (first == null) p.result.completeExceptionally(e);
+                        else p.result.complete(first);
+                    } catch (SQLException rowFailure) {
+                        p.result.completeExceptionally(rowFailure);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            for (Pending p : batch) p.result.completeExceptionally(e);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Pending p) throws SQLException {
+        CustomerDAO.bindBooking(ps, p.custId, p.type, p.date, p.time, p.price, p.venue, p.extra);
+        ps.setString(8, p.idempotencyKey);
+    }
+}
+
+
+class AvailabilityIndex {
+    private static final AvailabilityIndex INSTANCE = new AvailabilityIndex(Integer.getInteger("eventdb.slotMinutes", 240));
+
+    // One sorted calendar per venue: start minute (minutes since epoch) -> end minute.
+    private static final class VenueCalendar {
+        final TreeMap<Long, Long> slots = new TreeMap<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+    static final String NOT_LOADED = "Bookings are still loading from the database. Please try again shortly.";
+
+    private final long slotMinutes;
+    private final ConcurrentHashMap<String, VenueCalendar> venues = new ConcurrentHashMap<>();
+    // Until every shard's bookings are in, a free-looking slot may be booked already, so reservations are refused.
+    private volatile boolean loaded;
+    private final AtomicBoolean retrying = new AtomicBoolean();
+
+    AvailabilityIndex(int slotMinutes) { this.slotMinutes = slotMinutes; }
+
+    public static AvailabilityIndex get() { return INSTANCE; }
+
+    public boolean isLoaded() { return loaded; }
+
+    // true once every shard has been read; otherwise keeps retrying in the background every
+    // -Deventdb.availability.retryMs until one pass gets through them all.
+    public boolean load() {
+        if (loadOnce()) return true;
+        if (retrying.compareAndSet(false, true)) {
+            long retryMillis = Long.getLong("eventdb.availability.retryMs", 5_000L);
+            Thread t = new Thread(() -> {
+                while (!loaded) {
+                    try { Thread.sleep(retryMillis); } catch (InterruptedException e) { return; }
+                    loadOnce();
+                }
+            }, "availability-load");
+            t.setDaemon(true);
+            t.start();
+        }
+        return false;
+    }
+
+    // Bookings read from shards that did answer are kept; recording them again on the next pass is harmless.
+    private boolean loadOnce() {
+        boolean complete = true;
+        for (int s = 0; s < DBConnection.shardCount(); s++) {
+            try (Connection con = DBConnection.getConnection(s)) {
+                if (con == null) { complete = false; continue; }
+                try (Statement st = con.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT venue, event_date, event_time FROM bookings")) {
+                    while (rs.next()) {
+                        java.sql.Date d = rs.getDate(2);
+                        Time t = rs.getTime(3);
+                        if (d != null && t != null) record(rs.getString(1), d.toLocalDate(), t.toLocalTime());
+                    }
+                }
+            } catch (SQLException e) {
+                complete = false;
+                System.err.println("Availability not loaded from " + DBConnection.shardName(s) + ": " + e.getMessage());
+            }
+        }
+        if (complete) loaded = true;
+        return complete;
+    }
+
+    public boolean isAvailable(String venue, LocalDate date, LocalTime time) {
+        VenueCalendar cal = calendar(venue, false);
+        long start = startMinute(date, time);
+        if (cal == null || start < 0) return true;
+        cal.lock.readLock().lock();
+        try { return !overlaps(cal, start); }
+        finally { cal.lock.readLock().unlock(); }
+    }
+
+    // Atomically checks the slot and claims it; false means another booking already overlaps.
+    // Throws IllegalStateException while the index is not loaded.
+    public boolean tryReserve(String venue, LocalDate date, LocalTime time) {
+        if (!loaded) throw new IllegalStateException(NOT_LOADED);
+        VenueCalendar cal = calendar(venue, true);
+        long start = startMinute(date, time);
+        if (cal == null || start < 0) return true;
+        cal.lock.writeLock().lock();
+        try {
+            if (overlaps(cal, start)) return false;
+            cal.slots.put(start, start + slotMinutes);
+            return true;
+        } finally {
+            cal.lock.writeLock().unlock();
+        }
+    }
+
+    // Adds an already persisted booking without a conflict check.
+    public void record(String venue, LocalDate date, LocalTime time) {
+        VenueCalendar cal = calendar(venue, true);
+        long start = startMinute(date, time);
+        if (cal == null || start < 0) return;
+        cal.lock.writeLock().lock();
+        try { cal.slots.put(start, start + slotMinutes); }
+        finally { cal.lock.writeLock().unlock(); }
+    }
+
+    public void release(String venue, LocalDate date, LocalTime time) {
+        VenueCalendar cal = calendar(venue, false);
+        long start = startMinute(date, time);
+        if (cal == null || start < 0) return;
+        cal.lock.writeLock().lock();
+        try { cal.slots.remove(start); }
+        finally { cal.lock.writeLock().unlock(); }
+    }
+
+    // Earliest start at or after the requested one that does not overlap any booking.
+    public LocalDateTime nextFreeSlot(String venue, LocalDate date, LocalTime time) {
+        long candidate = startMinute(date, time);
+        if (candidate < 0) return null;
+        VenueCalendar cal = calendar(venue, false);
+        if (cal != null) {
+            cal.lock.readLock().lock();
+            try {
+                Map.Entry<Long, Long> blocker;
+                while ((blocker = firstOverlap(cal, candidate)) != null) candidate = blocker.getValue();
+            } finally {
+                cal.lock.readLock().unlock();
+            }
+        }
+        return LocalDateTime.ofEpochSecond(candidate * 60, 0, ZoneOffset.UTC);
+    }
+
+    private boolean overlaps(VenueCalendar cal, long start) { return firstOverlap(cal, start) != null; }
+
+    private Map.Entry<Long, Long> firstOverlap(VenueCalendar cal, long start) {
+        Map.Entry<Long, Long> before = cal.slots.floorEntry(start);
+        if (before != null && before.getValue() > start) return before;
+        Map.Entry<Long, Long> after = cal.slots.higherEntry(start);
+        if (after != null && after.getKey() < start + slotMinutes) return after;
+        return null;
+    }
+
+    private VenueCalendar calendar(String venue, boolean create) {
+        if (venue == null || venue.trim().isEmpty()) return null;
+        String key = venue.trim().toLowerCase(Locale.ROOT);
+        return create ? venues.computeIfAbsent(key, k -> new VenueCalendar()) : venues.get(key);
+    }
+
+    private static long startMinute(LocalDate date, LocalTime time) {
+        if (date == null || time == null) return -1;
+        return date.toEpochDay() * 1440 + time.getHour() * 60 + time.getMinute();
+    }
+}
+
+
+class SearchIndex {
+    private static final SearchIndex INSTANCE = new SearchIndex();
+    private static final LatencyHistogram QUERIES = Metrics.histogram("search.query");
+    private static final int PROBE_TERMS = 16;
+
+    static final class CustomerDoc {
+        final int id;
+        final String name, phone;
+        CustomerDoc(int id, String name, String phone) { this.id = id; this.name = name; this.phone = phone; }
+    }
+
+    // Ascending doc ids; docs are only ever appended, so each list stays sorted for free.
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    // docs holds CustomerDoc and BookingRecord entries; a doc id is its position.
+    private final List<Object> docs = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<Integer, Integer> customerDocs = new HashMap<>();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static SearchIndex get() { return INSTANCE; }
+
+    // Every shard's customers before any bookings: a booking only picks up its customer's name and phone terms if
+    // the customer is already indexed, and with sharding the customer usually lives on another shard.
+    public void load() {
+        loadEach("SELECT customer_id, name, phone FROM customers", rs -> addCustomer(rs.getInt(1), rs.getString(2), rs.getString(3)));
+        loadEach("SELECT " + BookingRecord.COLUMNS + " FROM bookings", rs -> addBooking(BookingRecord.read(rs)));
+    }
+
+    private interface RowHandler { void accept(ResultSet rs) throws SQLException; }
+
+    private static void loadEach(String sql, RowHandler handler) {
+        for (int s = 0; s < DBConnection.shardCount(); s++) {
+            try (Connection con = DBConnection.getConnection(s)) {
+                if (con == null) continue;
+                try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                    while (rs.next()) handler.accept(rs);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Re-adding a customer (after an update) retires the old doc rather than editing postings in place.
+    public void addCustomer(int id, String name, String phone) {
+        String digits = CustomerCache.normalizePhone(phone);
+        lock.writeLock().lock();
+        try {
+            Integer old = customerDocs.get(id);
+            if (old != null) {
+                CustomerDoc prev = (CustomerDoc) docs.get(old);
+                if (prev.name.equals(name) && prev.phone.equals(digits)) return;
+                deleted.set(old);
+            }
+            int doc = append(new CustomerDoc(id, name, digits));
+            customerDocs.put(id, doc);
+            indexText(doc, name);
+            addTerm(doc, digits);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Bookings are also findable by their customer's name and phone, as known when the booking is added.
+    public void addBooking(BookingRecord b) {
+        lock.writeLock().lock();
+        try {
+            int doc = append(b);
+            indexText(doc, b.eventType);
+            indexText(doc, b.venue);
+            indexText(doc, b.extraDetails);
+            Integer owner = customerDocs.get(b.customerId);
+            if (owner != null) {
+                CustomerDoc c = (CustomerDoc) docs.get(owner);
+                indexText(doc, c.name);
+                addTerm(doc, c.phone);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Every query word must prefix-match some word of the doc; newest docs come first. The rarest word drives
+    // the walk and the others are checked per candidate, so a page of results rarely touches whole postings lists.
+    public List<Object> search(String query, int limit) {
+        long start = System.nanoTime();
+        List<String> words = queryWords(query);
+        List<Object> out = new ArrayList<>();
+        if (words.isEmpty()) return out;
+        lock.readLock().lock();
+        try {
+            List<Collection<Postings>> lists = new ArrayList<>();
+            for (String w : words) lists.add(terms.subMap(w, true, w + Character.MAX_VALUE, true).values());
+            long[] cost = new long[lists.size()];
+            for (int i = 0; i < cost.length; i++) for (Postings p : lists.get(i)) cost[i] += p.size;
+            Integer[] order = new Integer[cost.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (x, y) -> Long.compare(cost[x], cost[y]));
+            if (cost[order[0]] == 0) return out;
+
+            // short prefixes expand to many terms; those are cheaper to intersect as a bitmap than to probe
+            List<Collection<Postings>> probes = new ArrayList<>();
+            BitSet filter = null;
+            for (int k = 1; k < order.length; k++) {
+                Collection<Postings> w = lists.get(order[k]);
+                if (w.size() <= PROBE_TERMS) probes.add(w);
+                else if (filter == null) filter = union(w);
+                else filter.and(union(w));
+            }
+
+            Collection<Postings> driver = lists.get(order[0]);
+            if (driver.size() <= PROBE_TERMS) {
+                Cursor c = new Cursor(driver);
+                for (int d = c.next(); d >= 0 && out.size() < limit; d = c.next())
+                    if (matches(d, filter, probes)) out.add(docs.get(d));
+            } else {
+                BitSet all = union(driver);
+                for (int d = all.previousSetBit(docs.size() - 1); d >= 0 && out.size() < limit; d = all.previousSetBit(d - 1))
+                    if (matches(d, filter, probes)) out.add(docs.get(d));
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+            QUERIES.recordSince(start);
+        }
+    }
+
+    private boolean matches(int doc, BitSet filter, List<Collection<Postings>> probes) {
+        if (deleted.get(doc) || (filter != null && !filter.get(doc))) return false;
+        for (Collection<Postings> w : probes) if (!contains(w, doc)) return false;
+        return true;
+    }
+
+    private BitSet union(Collection<Postings> lists) {
+        BitSet out = new BitSet(docs.size());
+        for (Postings p : lists) for (int i = 0; i < p.size; i++) out.set(p.ids[i]);
+        return out;
+    }
+
+    private static boolean contains(Collection<Postings> lists, int doc) {
+        for (Postings p : lists) if (Arrays.binarySearch(p.ids, 0, p.size, doc) >= 0) return true;
+        return false;
+    }
+
+    // Walks the union of a few postings lists from the newest doc down.
+    private static final class Cursor {
+        private final Postings[] lists;
+        private final int[] pos;
+
+        Cursor(Collection<Postings> c) {
+            lists = c.toArray(new Postings[0]);
+            pos = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) pos[i] = lists[i].size - 1;
+        }
+
+        int next() {
+            int best = -1;
+            for (int i = 0; i < lists.length; i++) if (pos[i] >= 0 && lists[i].ids[pos[i]] > best) best = lists[i].ids[pos[i]];
+            for (int i = 0; i < lists.length; i++) if (pos[i] >= 0 && lists[i].ids[pos[i]] == best) pos[i]--;
+            return best;
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return docs.size() - deleted.cardinality(); } finally { lock.readLock().unlock(); }
+    }
+
+    private int append(Object doc) {
+        docs.add(doc);
+        return docs.size() - 1;
+    }
+
+    private void indexText(int doc, String text) {
+        for (String w : words(text)) addTerm(doc, w);
+    }
+
+    private void addTerm(int doc, String term) {
+        if (!term.isEmpty()) terms.computeIfAbsent(term, k -> new Postings()).add(doc);
+    }
+
+    // Lower-cased runs of letters and digits.
+    static List<String> words(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    // A query made only of phone punctuation and digits is one phone number, not several words.
+    private static List<String> queryWords(String query) {
+        if (query != null && !query.isBlank() && query.matches("[0-9 +()\\-]+")) {
+            List<String> one = new ArrayList<>();
+            one.add(CustomerCache.normalizePhone(query));
+            return one;
+        }
+        return words(query);
+    }
+}
+
+
+class BookingAnalytics {
+    private static final int TYPES = EventType.values().length;
+    private static final int CHUNK = 1 << 16;
+    private static final LatencyHistogram QUERIES = Metrics.histogram("analytics.query");
+    private static final BookingAnalytics INSTANCE = new BookingAnalytics();
+
+    // Revenue and volume per event type, venue and month, plus guest totals for the types that record guests.
+    static final class Report {
+        long count;
+        double revenue;
+        final long[] typeCount = new long[TYPES], typeGuests = new long[TYPES], typeGuestBookings = new long[TYPES];
+        final double[] typeRevenue = new double[TYPES];
+        long[] venueCount = new long[16];
+        double[] venueRevenue = new double[16];
+        // months are keyed year * 12 + month - 1 and stored from monthBase up
+        int monthBase;
+        long[] monthCount = new long[0];
+        double[] monthRevenue = new double[0];
+        List<String> venueNames = new ArrayList<>();
+
+        void add(int type, int month, double price, int venue, int guests) {
+            count++;
+            revenue += price;
+            if (type >= 0) {
+                typeCount[type]++;
+                typeRevenue[type] += price;
+                if (guests >= 0) { typeGuests[type] += guests; typeGuestBookings[type]++; }
+            }
+            if (venue >= venueCount.length) growVenues(venue + 1);
+            venueCount[venue]++;
+            venueRevenue[venue] += price;
+            int m = monthSlot(month);
+            monthCount[m]++;
+            monthRevenue[m] += price;
+        }
+
+        Report merge(Report o) {
+            count += o.count;
+            revenue += o.revenue;
+            for (int t = 0; t < TYPES; t++) {
+                typeCount[t] += o.typeCount[t]; typeRevenue[t] += o.typeRevenue[t];
+                typeGuests[t] += o.typeGuests[t]; typeGuestBookings[t] += o.typeGuestBookings[t];
+            }
+            if (o.venueCount.length > venueCount.length) growVenues(o.venueCount.length);
+            for (int v = 0; v < o.venueCount.length; v++) { venueCount[v] += o.venueCount[v]; venueRevenue[v] += o.venueRevenue[v]; }
+            for (int i = 0; i < o.monthCount.length; i++) {
+                if (o.monthCount[i] == 0) continue;
+                int m = monthSlot(o.monthBase + i);
+                monthCount[m] += o.monthCount[i];
+                monthRevenue[m] += o.monthRevenue[i];
+            }
+            return this;
+        }
+
+        private int monthSlot(int key) {
+            if (monthCount.length == 0) {
+                monthBase = key;
+                monthCount = new long[12];
+                monthRevenue = new double[12];
+            } else if (key < monthBase) {
+                int shift = monthBase - key + 12, n = monthCount.length + shift;
+                long[] c = new long[n];
+                double[] r = new double[n];
+                System.arraycopy(monthCount, 0, c, shift, monthCount.length);
+                System.arraycopy(monthRevenue, 0, r, shift, monthRevenue.length);
+                monthCount = c; monthRevenue = r; monthBase -= shift;
+            } else if (key - monthBase >= monthCount.length) {
+                int n = Math.max(key - monthBase + 1, monthCount.length * 2);
+                monthCount = Arrays.copyOf(monthCount, n);
+                monthRevenue = Arrays.copyOf(monthRevenue, n);
+            }
+            return key - monthBase;
+        }
+
+        private void growVenues(int min) {
+            int n = Math.max(min, venueCount.length * 2);
+            venueCount = Arrays.copyOf(venueCount, n);
+            venueRevenue = Arrays.copyOf(venueRevenue, n);
+        }
+
+        double averageGuests() {
+            long guests = 0, bookings = 0;
+            for (int t = 0; t < TYPES; t++) { guests += typeGuests[t]; bookings += typeGuestBookings[t]; }
+            return bookings == 0 ? 0 : (double) guests / bookings;
+        }
+
+        String format() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "Bookings: %d   Revenue: ₹%.2f   Average guests: %.1f%n%n", count, revenue, averageGuests()));
+            sb.append("By event type\n");
+            for (EventType t : EventType.values()) {
+                int i = t.ordinal();
+                if (typeCount[i] == 0) continue;
+                sb.append(String.format(Locale.ROOT, "  %-26s %8d  ₹%14.2f", t.displayName, typeCount[i], typeRevenue[i]));
+                if (typeGuestBookings[i] > 0) sb.append(String.format(Locale.ROOT, "  avg guests %.1f", (double) typeGuests[i] / typeGuestBookings[i]));
+                sb.append('\n');
+            }
+            sb.append("\nBy venue\n");
+            Integer[] order = new Integer[Math.min(venueCount.length, venueNames.size())];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(venueRevenue[b], venueRevenue[a]));
+            for (int v : order)
+                if (venueCount[v] > 0) sb.append(String.format(Locale.ROOT, "  %-26s %8d  ₹%14.2f%n", venueNames.get(v), venueCount[v], venueRevenue[v]));
+            sb.append("\nBy month\n");
+            for (int i = 0; i < monthCount.length; i++) {
+                int k = monthBase + i;
+                if (monthCount[i] > 0) sb.append(String.format(Locale.ROOT, "  %04d-%02d %26d  ₹%14.2f%n", k / 12, k % 12 + 1, monthCount[i], monthRevenue[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    // Column per field, row per booking: type ordinal (-1 if unknown), epoch day, month key, price, venue code, guests.
+    private byte[] types = new byte[1024];
+    private int[] days = new int[1024], months = new int[1024], venues = new int[1024], guests = new int[1024];
+    private double[] prices = new double[1024];
+    private int size;
+
+    private final Map<String, Integer> venueCodes = new HashMap<>();
+    private final List<String> venueNames = new ArrayList<>();
+    private final Map<String, Integer> typeCodes = new HashMap<>();
+    private final Report totals = new Report();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static BookingAnalytics get() { return INSTANCE; }
+
+    public void load() {
+        for (int s = 0; s < DBConnection.shardCount(); s++) {
+            try (Connection con = DBConnection.getConnection(s)) {
+                if (con == null) continue;
+                try (Statement st = con.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT event_type, event_date, price, venue, extra_details FROM bookings")) {
+                    while (rs.next()) {
+                        java.sql.Date d = rs.getDate(2);
+                        if (d != null) append(rs.getString(1), d.toLocalDate(), rs.getDouble(3), rs.getString(4), rs.getString(5));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void append(String type, LocalDate date, double price, String venue, String extra) {
+        int g = guestCount(extra);
+        int month = date.getYear() * 12 + date.getMonthValue() - 1;
+        lock.writeLock().lock();
+        try {
+            if (size == prices.length) grow();
+            int t = typeCode(type), v = venueCode(venue);
+            types[size] = (byte) t;
+            days[size] = (int) date.toEpochDay();
+            months[size] = month;
+            prices[size] = price;
+            venues[size] = v;
+            guests[size] = g;
+            size++;
+            totals.add(t, month, price, v, g);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    // Whole-history reports come straight from the running rollup; date-bounded ones scan the columns in parallel.
+    public Report report(LocalDate from, LocalDate to) {
+        long start = System.nanoTime();
+        byte[] ty; int[] dy, mo, ve, gu; double[] pr; int n;
+        Report out;
+        lock.readLock().lock();
+        try {
+            if (from == null && to == null) {
+                out = new Report().merge(totals);
+                out.venueNames = new ArrayList<>(venueNames);
+                QUERIES.recordSince(start);
+                return out;
+            }
+            // rows below size are never rewritten, so the scan can run on these references without the lock
+            ty = types; dy = days; mo = months; ve = venues; gu = guests; pr = prices; n = size;
+            out = new Report();
+            out.venueNames = new ArrayList<>(venueNames);
+        } finally {
+            lock.readLock().unlock();
+        }
+        int lo = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        int hi = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        Report scanned = IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel()
+                .mapToObj(c -> {
+                    Report r = new Report();
+                    for (int i = c * CHUNK, end = Math.min(n, i + CHUNK); i < end; i++)
+                        if (dy[i] >= lo && dy[i] <= hi) r.add(ty[i], mo[i], pr[i], ve[i], gu[i]);
+                    return r;
+                })
+                .reduce(Report::merge)
+                .orElseGet(Report::new);
+        out.merge(scanned);
+        QUERIES.recordSince(start);
+        return out;
+    }
+
+    private void grow() {
+        int n = prices.length * 2;
+        types = Arrays.copyOf(types, n); days = Arrays.copyOf(days, n); months = Arrays.copyOf(months, n);
+        venues = Arrays.copyOf(venues, n); guests = Arrays.copyOf(guests, n); prices = Arrays.copyOf(prices, n);
+    }
+
+    private int typeCode(String type) {
+        return typeCodes.computeIfAbsent(type == null ? "" : type, k -> {
+            EventType t = EventType.fromName(k);
+            return t == null ? -1 : t.ordinal();
+        });
+    }
+
+    private int venueCode(String venue) {
+        String name = venue == null || venue.trim().isEmpty() ? "(no venue)" : venue.trim();
+        return venueCodes.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> {
+            venueNames.add(name);
+            return venueNames.size() - 1;
+        });
+    }
+
+    // Reads N out of "..., Guests: N, ..." as written by Event.extraDetails(); -1 when absent, so a booking with
+    // 0 guests still counts towards the average the way a 0 does in SELECT AVG(guests), while types without guests
+    // stay out of it like a NULL would.
+    static int guestCount(String extra) {
+        if (extra == null) return -1;
+        int at = extra.indexOf("Guests: ");
+        if (at < 0) return -1;
+        int n = 0, i = at + 8;
+        for (; i < extra.length(); i++) {
+            char c = extra.charAt(i);
+            if (c < '0' || c > '9' || n > 10_000_000) break;
+            n = n * 10 + (c - '0');
+        }
+        return i == at + 8 ? -1 : n;
+    }
+}
+
+
+class TimerWheel {
+    static final class Timeout {
+        final Object payload;
+        final long deadline;
+        long rounds;
+        Timeout next;
+        volatile boolean cancelled;
+
+        Timeout(Object payload, long deadline) { this.payload = payload; this.deadline = deadline; }
+
+        // O(1); the entry is dropped when the wheel next passes its bucket
+        void cancel() { cancelled = true; }
+    }
+
+    private final long tickNanos, startNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<Object>> onExpired;
+    private long tick;
+
+    // One thread for any number of timeouts: each tick moves new timeouts into their bucket and fires one bucket,
+    // handing everything due in it to onExpired as one batch. Timeouts fire up to one tick late.
+    TimerWheel(String name, long tickMillis, int wheelSize, Consumer<List<Object>> onExpired) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Timeout[Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1];
+        this.mask = buckets.length - 1;
+        this.onExpired = onExpired;
+        this.startNanos = System.nanoTime();
+        Thread t = new Thread(this::run, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    Timeout schedule(Object payload, long delayMillis) {
+        Timeout t = new Timeout(payload, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        incoming.add(t);
+        return t;
+    }
+
+    private void run() {
+        List<Object> due = new ArrayList<>();
+        while (true) {
+            long wake = startNanos + (tick + 1) * tickNanos;
+            for (long now = System.nanoTime(); now < wake; now = System.nanoTime()) LockSupport.parkNanos(wake - now);
+            for (Timeout t = incoming.poll(); t != null; t = incoming.poll()) {
+                if (t.cancelled) continue;
+                long ticks = (t.deadline - startNanos) / tickNanos;
+                t.rounds = Math.max(0, (ticks - tick) / buckets.length);
+                int idx = (int) (Math.max(ticks, tick) & mask);
+                t.next = buckets[idx];
+                buckets[idx] = t;
+            }
+            int idx = (int) (tick & mask);
+            Timeout prev = null;
+            for (Timeout t = buckets[idx]; t != null; t = t.next) {
+                boolean remove = t.cancelled;
+                if (!remove && t.rounds > 0) t.rounds--;
+                else if (!remove) { due.add(t.payload); remove = true; }
+                if (!remove) prev = t;
+                else if (prev == null) buckets[idx] = t.next;
+                else prev.next = t.next;
+            }
+            tick++;
+            if (due.isEmpty()) continue;
+            try {
+                onExpired.accept(due);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            due.clear();
+        }
+    }
+}
+
+
+class SlotHolds {
+    private static final SlotHolds INSTANCE = new SlotHolds(AvailabilityIndex.get(),
+            TimeUnit.SECONDS.toMillis(Long.getLong("eventdb.holdSeconds", 600L)), Long.getLong("eventdb.holdTickMs", 250L));
+    private static final LongAdder PLACED = Metrics.counter("holds.placed"), EXPIRED = Metrics.counter("holds.expired");
+
+    static final int HELD = 0, CLAIMED = 1, BOOKED = 2, RELEASED = 3;
+
+    // A slot kept out of AvailabilityIndex for one checkout. HELD -> CLAIMED (payment running) -> BOOKED, or
+    // HELD/CLAIMED -> RELEASED with the slot given back when it expires, is cancelled or the payment fails.
+    static final class Hold {
+        final String ref;
+        final BookingService.Customer customer;
+        final Event event;
+        final double price;
+        final long expiresAt;
+        final AtomicInteger state = new AtomicInteger(HELD);
+        TimerWheel.Timeout timeout;
+        volatile PaymentResult payment;
+        // System.nanoTime() when the gateway approved, for the PAY/PERSIST split in BookingService.book
+        volatile long paidNanos;
+
+        Hold(String ref, BookingService.Customer customer, Event event, double price, long expiresAt) {
+            this.ref = ref; this.customer = customer; this.event = event; this.price = price; this.expiresAt = expiresAt;
+        }
+
+        boolean isLive() { return state.get() == HELD; }
+        boolean isReleased() { return state.get() == RELEASED; }
+    }
+
+    private final AvailabilityIndex slots;
+    private final long ttlMillis;
+    private final TimerWheel wheel;
+    private final ConcurrentHashMap<String, Hold> byRef = new ConcurrentHashMap<>();
+
+    SlotHolds(AvailabilityIndex slots, long ttlMillis, long tickMillis) {
+        this.slots = slots;
+        this.ttlMillis = ttlMillis;
+        this.wheel = new TimerWheel("slot-holds", tickMillis, 1024, this::expire);
+    }
+
+    public static SlotHolds get() { return INSTANCE; }
+
+    // null when someone else holds or has booked the slot; the same checkout asking again, even concurrently,
+    // gets its live hold back
+    public Hold place(String ref, BookingService.Customer customer, Event ev, double price) {
+        Hold h = byRef.compute(ref, (k, cur) -> {
+            if (cur != null && cur.isLive()) return cur;
+            if (!slots.tryReserve(ev.getVenue(), ev.getDate(), ev.getTime())) return cur;
+            Hold placed = new Hold(ref, customer, ev, price, System.currentTimeMillis() + ttlMillis);
+            placed.timeout = wheel.schedule(placed, ttlMillis);
+            PLACED.increment();
+            return placed;
+        });
+        return h != null && h.isLive() ? h : null;
+    }
+
+    public Hold find(String ref) {
+        Hold h = byRef.get(ref);
+        return h != null && h.isLive() ? h : null;
+    }
+
+    // Stops the clock for the payment; false if the hold already expired or was taken.
+    public boolean claim(Hold h) {
+        if (!h.state.compareAndSet(HELD, CLAIMED)) return false;
+        h.timeout.cancel();
+        return true;
+    }
+
+    // The slot now belongs to a stored booking.
+    public void complete(Hold h) {
+        if (h.state.compareAndSet(CLAIMED, BOOKED)) byRef.remove(h.ref, h);
+    }
+
+    // The customer walked away. A claimed hold is left alone: its payment may still go through.
+    public void cancel(Hold h) {
+        if (!h.state.compareAndSet(HELD, RELEASED)) return;
+        h.timeout.cancel();
+        byRef.remove(h.ref, h);
+        slots.release(h.event.getVenue(), h.event.getDate(), h.event.getTime());
+    }
+
+    public void release(Hold h) {
+        int was = h.state.getAndUpdate(s -> s == BOOKED ? s : RELEASED);
+        if (was == BOOKED || was == RELEASED) return;
+        h.timeout.cancel();
+        byRef.remove(h.ref, h);
+        slots.release(h.event.getVenue(), h.event.getDate(), h.event.getTime());
+    }
+
+    public int size() { return byRef.size(); }
+
+    private void expire(List<Object> due) {
+        for (Object o : due) {
+            Hold h = (Hold) o;
+            if (!h.state.compareAndSet(HELD, RELEASED)) continue;
+            byRef.remove(h.ref, h);
+            slots.release(h.event.getVenue(), h.event.getDate(), h.event.getTime());
+            EXPIRED.increment();
+        }
+    }
+}
+
+
+class BookingJournal {
+    private static final BookingJournal INSTANCE = new BookingJournal(
+            Paths.get(System.getProperty("eventdb.journal.path", "eventdb-journal.log")),
+            Long.getLong("eventdb.journal.replayIntervalMs", 10_000L));
+
+    private static final char SEP = '\u001F';
+    private static final int HEADER = 8;            // int length + int crc32
+    private static final int REPLAY_CHUNK = 200;
+    static final String REPLAY_SQL = "INSERT INTO bookings (customer_id, event_type, event_date, event_time, price, venue, extra_details, journal_ref) VALUES (?,?,?,?,?,?,?,?)";
+
+    private static final class Append {
+        final ByteBuffer record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        Append(ByteBuffer record) { this.record = record; }
+    }
+
+    private final Path path, offsetPath;
+    private final long replayIntervalMillis;
+    private final LinkedBlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private final AtomicInteger nextLocalId = new AtomicInteger(-2);
+    // local (negative) customer id -> {name, phone, address}, kept until the customer reaches the DB
+    private final ConcurrentHashMap<Integer, String[]> localCustomers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> replayedCustomers = new ConcurrentHashMap<>();
+    private volatile FileChannel channel;
+    private volatile long replayOffset;
+    private volatile boolean opened;
+
+    BookingJournal(Path path, long replayIntervalMillis) {
+        this.path = path;
+        this.offsetPath = Paths.get(path + ".offset");
+        this.replayIntervalMillis = replayIntervalMillis;
+    }
+
+    public static BookingJournal get() { return INSTANCE; }
+
+    // Opens the journal, drops a torn tail left by a crash, and starts the group-commit writer and the replayer.
+    public synchronized void start() throws IOException {
+        if (opened) return;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (Files.exists(offsetPath)) {
+            String[] saved = new String(Files.readAllBytes(offsetPath), StandardCharsets.UTF_8).trim().split(" ");
+            replayOffset = Long.parseLong(saved[0]);
+            nextLocalId.set(Integer.parseInt(saved[1]));
+        }
+        long end = scan(0, record -> {
+            if (record[0].equals("C")) {
+                int localId = Integer.parseInt(record[1]);
+                localCustomers.put(localId, new String[]{record[2], record[3], record[4]});
+                nextLocalId.accumulateAndGet(localId - 1, Math::min);
+            }
+        });
+        channel.truncate(end);
+        channel.position(end);
+        replayOffset = Math.min(replayOffset, end);
+        opened = true;
+
+        Thread writer = new Thread(this::runWriter, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-replayer"); t.setDaemon(true); return t;
+        });
+        replayer.scheduleWithFixedDelay(this::replayQuietly, replayIntervalMillis, replayIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Journals a customer that could not be saved; returns the negative local id that stands in for customer_id.
+    public int appendCustomer(String name, String phone, String address) throws Exception {
+        int localId = nextLocalId.getAndDecrement();
+        localCustomers.put(localId, new String[]{name, phone, address});
+        append("C", String.valueOf(localId), name, phone, address).get();
+        return localId;
+    }
+
+    public CompletableFuture<Void> appendBooking(int custId, String type, LocalDate date, LocalTime time, double price, String venue, String extra) {
+        return append("B", UUID.randomUUID().toString(), String.valueOf(custId), type,
+                date.toString(), time.toString(), String.valueOf(price), venue, extra);
+    }
+
+    public boolean hasPending() {
+        try { return opened && replayOffset < channel.size(); }
+        catch (IOException e) { return false; }
+    }
+
+    private CompletableFuture<Void> append(String... fields) {
+        if (!opened) return CompletableFuture.failedFuture(new IOException("Journal not started"));
+        Append a = new Append(encode(fields));
+        appends.add(a);
+        return a.done;
+    }
+
+    private static ByteBuffer encode(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) sb.append(SEP);
+            sb.append(fields[i] == null ? "" : fields[i].replace(SEP, ' '));
+        }
+        byte[] payload = sb.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    // Group commit: everything queued while the previous fsync ran goes out in one write + one force.
+    private void runWriter() {
+        List<Append> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(appends.take());
+                appends.drainTo(batch);
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) buffers[i] = batch.get(i).record;
+                fileLock.lock();
+                try {
+                    while (buffers[buffers.length - 1].hasRemaining()) channel.write(buffers);
+                    channel.force(false);
+                } finally {
+                    fileLock.unlock();
+                }
+                for (Append a : batch) a.done.complete(null);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                for (Append a : batch) a.done.completeExceptionally(e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void replayQuietly() {
+        if (!hasPending()) return;
+        try { replay(); }
+        catch (Exception e) { System.err.println("Journal replay deferred: " + e.getMessage()); }
+    }
+
+    // Drains journaled bookings into MySQL in batches. Rows whose journal_ref is already stored (a re-run after a crash)
+    // are skipped; any other insert error rolls the shard's batch back and stops the replay until it is fixed.
+    public synchronized int replay() throws Exception {
+        int total = 0;
+        while (hasPending()) {
+            List<String[]> chunk = new ArrayList<>(REPLAY_CHUNK);
+            long chunkEnd = scan(replayOffset, REPLAY_CHUNK, chunk::add);
+            if (chunk.isEmpty()) break;
+            // one transaction per venue shard; if a later shard fails, journal_ref skips the committed ones on retry
+            Map<Integer, List<String[]>> byShard = new TreeMap<>();
+            for (String[] r : chunk) {
+                if (r[0].equals("B")) byShard.computeIfAbsent(DBConnection.venueShard(r[7]), k -> new ArrayList<>()).add(r);
+            }
+            for (Map.Entry<Integer, List<String[]>> shard : byShard.entrySet()) {
+                // customers first, so no connection is held while another is borrowed
+                for (String[] r : shard.getValue()) resolveCustomer(Integer.parseInt(r[2]));
+                try (Connection con = DBConnection.getConnection(shard.getKey())) {
+                    if (con == null) throw new Exception("JDBC Not Connected");
+                    List<String[]> rows = new ArrayList<>(shard.getValue());
+                    Set<String> stored = storedRefs(con, rows);
+                    rows.removeIf(r -> stored.contains(r[1]));
+                    if (rows.isEmpty()) continue;
+                    con.setAutoCommit(false);
+                    try (PreparedStatement ps = con.prepareStatement(REPLAY_SQL)) {
+                        for (String[] r : rows) {
+                            CustomerDAO.bindBooking(ps, resolveCustomer(Integer.parseInt(r[2])), r[3],
+                                    LocalDate.parse(r[4]), LocalTime.parse(r[5]), Double.parseDouble(r[6]), r[7], r[8]);
+                            ps.setString(8, r[1]);
+                            ps.addBatch();
+                            total++;
+                        }
+                        ps.executeBatch();
+                        con.commit();
+                    } catch (SQLException e) {
+                        con.rollback();
+                        throw e;
+                    } finally {
+                        con.setAutoCommit(true);
+                    }
+                    // Same indexes a live save updates. Skipped rows were stored and indexed on an earlier pass.
+                    for (String[] r : rows) {
+                        CustomerDAO.indexBooking(0, resolveCustomer(Integer.parseInt(r[2])), r[3],
+                                LocalDate.parse(r[4]), LocalTime.parse(r[5]), Double.parseDouble(r[6]), r[7], r[8]);
+                    }
+                }
+            }
+            replayOffset = chunkEnd;
+            saveOffset();
+        }
+        compactIfDrained();
+        return total;
+    }
+
+    private static Set<String> storedRefs(Connection con, List<String[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT journal_ref FROM bookings WHERE journal_ref IN (");
+        for (int i = 0; i < rows.size(); i++) sql.append(i == 0 ? "?" : ",?");
+        Set<String> stored = new HashSet<>();
+        try (PreparedStatement ps = con.prepareStatement(sql.append(')').toString())) {
+            for (int i = 0; i < rows.size(); i++) ps.setString(i + 1, rows.get(i)[1]);
+            try (ResultSet rs = ps.executeQuery()) { while (rs.next()) stored.add(rs.getString(1)); }
+        }
+        return stored;
+    }
+
+    // Journaled customers are created on their home shard, committed on their own so the id is real before any
+    // booking refers to it.
+    private int resolveCustomer(int custId) throws Exception {
+        if (custId > 0 || custId == -1) return custId;
+        Integer known = replayedCustomers.get(custId);
+        if (known != null) return known;
+        String[] c = localCustomers.get(custId);
+        if (c == null) return -1;
+        String phone = CustomerCache.normalizePhone(c[1]);
+        int id;
+        try (Connection con = DBConnection.getConnection(DBConnection.customerShard(phone))) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            id = CustomerDAO.resolveCustomer(con, c[0], phone, c[2]);
+        }
+        replayedCustomers.put(custId, id);
+        return id;
+    }
+
+    // Drops replayed bookings but keeps the customer records: a booking journaled later, even after a restart, may
+    // still name one of those local ids, and the file is the only place the mapping survives. The compacted file is
+    // written beside the journal and renamed over it, so a crash leaves one or the other intact.
+    private void compactIfDrained() throws IOException {
+        fileLock.lock();
+        try {
+            if (replayOffset < channel.size() || !appends.isEmpty()) return;
+            List<ByteBuffer> kept = new ArrayList<>();
+            for (Map.Entry<Integer, String[]> c : new TreeMap<>(localCustomers).descendingMap().entrySet())
+                kept.add(encode("C", String.valueOf(c.getKey()), c.getValue()[0], c.getValue()[1], c.getValue()[2]));
+            Path tmp = Paths.get(path + ".compact");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = kept.toArray(new ByteBuffer[0]);
+                while (buffers.length > 0 && buffers[buffers.length - 1].hasRemaining()) out.write(buffers);
+                out.force(false);
+            }
+            // the offset still points at the old end, which skips everything in the new file: replay stays idle
+            // whichever of the two a crash leaves behind
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            // customer records are never replayed, so the replay position starts after them
+            replayOffset = channel.size();
+            saveOffset();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private void saveOffset() throws IOException {
+        Path tmp = Paths.get(offsetPath + ".tmp");
+        Files.write(tmp, (replayOffset + " " + nextLocalId.get()).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, offsetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long scan(long from, Consumer<String[]> sink) throws IOException { return scan(from, Integer.MAX_VALUE, sink); }
+
+    // Reads up to max intact records starting at from; returns the offset just past the last one read.
+    private long scan(long from, int max, Consumer<String[]> sink) throws IOException {
+        long pos = from, size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        for (int n = 0; n < max && pos + HEADER <= size; n++) {
+            header.clear();
+            if (channel.read(header, pos) < HEADER) break;
+            header.flip();
+            int len = header.getInt(), crc = header.getInt();
+            if (len < 0 || pos + HEADER + len > size) break;
+            ByteBuffer payload = ByteBuffer.allocate(len);
+            while (payload.hasRemaining() && channel.read(payload, pos + HEADER + payload.position()) > 0) { }
+            CRC32 check = new CRC32();
+            check.update(payload.array());
+            if ((int) check.getValue() != crc) break;
+            sink.accept(new String(payload.array(), StandardCharsets.UTF_8).split(String.valueOf(SEP), -1));
+            pos += HEADER + len;
+        }
+        return pos;
+    }
+}
+
+
+abstract class Event {
+    private LocalDate date;
+    private LocalTime time;
+    private String venue;
+
+    public void setDetails(LocalDate d, LocalTime t, String v) { this.date = d; this.time = t; this.venue = v; }
+    public LocalDate getDate(){ return date; }
+    public LocalTime getTime(){ return time; }
+    public String getVenue(){ return venue; }
+    public abstract EventType type();
+    public int getGuestCount(){ return 0; }
+    public int getYearsCompleted(){ return 0; }
+    public double calculatePrice() { return PricingEngine.get().quote(this); }
+    public String extraDetails(){ return ""; } 
+}
+
+
+class MarriageEvent extends Event {
+    private String bride, groom;
+    public void setBride(String b){ this.bride = b; }
+    public void setGroom(String g){ this.groom = g; }
+    public String getBride(){ return bride; }
+    public String getGroom(){ return groom; }
+    public EventType type() { return EventType.MARRIAGE; }
+    public String extraDetails(){ return "Bride: "+bride+", Groom: "+groom; }
+}
+
+class BirthdayEvent extends Event {
+    private String birthdayName;
+    public void setBirthdayName(String n){ this.birthdayName = n; }
+    public String getBirthdayName(){ return birthdayName; }
+    public EventType type() { return EventType.BIRTHDAY; }
+    public String extraDetails(){ return "Birthday Name: "+birthdayName; }
+}
+
+class EngagementEvent extends Event {
+    private String coupleNames, venuePreference;
+    private int guestCount;
+    public void setCoupleNames(String s){ this.coupleNames = s; }
+    public void setVenuePreference(String v){ this.venuePreference = v; }
+    public void setGuestCount(int g){ this.guestCount = g; }
+    public String getCoupleNames(){ return coupleNames; }
+    public EventType type() { return EventType.ENGAGEMENT; }
+    public int getGuestCount(){ return guestCount; }
+    public String extraDetails(){ return "Couple: "+coupleNames+", Guests: "+guestCount; }
+}
+
+class BabyShowerEvent extends Event {
+    private String motherName, theme;
+    private int guestCount;
+    public void setMotherName(String m){ this.motherName = m; }
+    public void setTheme(String t){ this.theme = t; }
+    public void setGuestCount(int g){ this.guestCount = g; }
+    public EventType type() { return EventType.BABY_SHOWER; }
+    public int getGuestCount(){ return guestCount; }
+    public String extraDetails(){ return "Mother: "+motherName+", Theme: "+theme+", Guests: "+guestCount; }
+}
+
+class AnniversaryEvent extends Event {
+    private String coupleNames, venueType;
+    private int yearsCompleted;
+    public void setCoupleNames(String s){ this.coupleNames = s; }
+    public void setVenueType(String v){ this.venueType = v; }
+    public void setYearsCompleted(int y){ this.yearsCompleted = y; }
+    public EventType type() { return EventType.ANNIVERSARY; }
+    public int getYearsCompleted(){ return yearsCompleted; }
+    public String extraDetails(){ return "Couple: "+coupleNames+", Years: "+yearsCompleted+", Venue: "+venueType; }
+}
+
+
+enum EventType {
+    MARRIAGE("Marriage", "bride", "groom"),
+    BIRTHDAY("Birthday Party", "birthdayName"),
+    ENGAGEMENT("Engagement Ceremony", "couple", "guests"),
+    BABY_SHOWER("Baby Shower", "mother", "theme", "guests"),
+    ANNIVERSARY("Anniversary Celebration", "couple", "years");
+
+    final String displayName;
+    final String[] requiredExtras;
+
+    EventType(String displayName, String... requiredExtras) {
+        this.displayName = displayName; this.requiredExtras = requiredExtras;
+    }
+
+    // Accepts either the display name ("Birthday Party") or the constant name ("BIRTHDAY").
+    static EventType fromName(String name) {
+        if (name == null) return null;
+        String n = name.trim();
+        for (EventType t : values()) if (t.displayName.equalsIgnoreCase(n) || t.name().equalsIgnoreCase(n)) return t;
+        return null;
+    }
+
+    // Builds the matching Event subclass from an already validated request.
+    Event create(BookingRequest r) {
+        LocalDate date = ValidationUtils.parseDate(r.date);
+        LocalTime time = ValidationUtils.parseTime(r.time);
+        String venue = r.venue == null ? "" : r.venue.trim();
+        Event ev;
+        switch (this) {
+            case MARRIAGE: {
+                MarriageEvent m = new MarriageEvent();
+                m.setBride(r.extra("bride")); m.setGroom(r.extra("groom"));
+                ev = m; break;
+            }
+            case BIRTHDAY: {
+                BirthdayEvent b = new BirthdayEvent();
+                b.setBirthdayName(r.extra("birthdayName"));
+                ev = b; break;
+            }
+            case ENGAGEMENT: {
+                EngagementEvent e = new EngagementEvent();
+                e.setCoupleNames(r.extra("couple")); e.setVenuePreference(venue);
+                e.setGuestCount(ValidationUtils.parseNonNegativeInt(r.extra("guests").trim()));
+                ev = e; break;
+            }
+            case BABY_SHOWER: {
+                BabyShowerEvent s = new BabyShowerEvent();
+                s.setMotherName(r.extra("mother")); s.setTheme(r.extra("theme"));
+                s.setGuestCount(ValidationUtils.parseNonNegativeInt(r.extra("guests").trim()));
+                ev = s; break;
+            }
+            default: {
+                AnniversaryEvent a = new AnniversaryEvent();
+                a.setCoupleNames(r.extra("couple")); a.setVenueType(venue);
+                a.setYearsCompleted(ValidationUtils.parseNonNegativeInt(r.extra("years").trim()));
+                ev = a; break;
+            }
+        }
+        ev.setDetails(date, time, venue);
+        return ev;
+    }
+}
+
+
+class PricingEngine {
+    private static final PricingEngine INSTANCE = new PricingEngine(
+            Paths.get(System.getProperty("eventdb.pricing.path", "pricing.properties")),
+            Long.getLong("eventdb.pricing.reloadMs", 2_000L));
+
+    // Flat, immutable rule table indexed by EventType ordinal; swapped atomically on reload.
+    static final class Rules {
+        final double[] base, perGuest, perYear, weekendSurcharge;
+        final double[] monthSurcharge;   // [type * 12 + month - 1]
+
+        Rules(int types) {
+            base = new double[types]; perGuest = new double[types]; perYear = new double[types];
+            weekendSurcharge = new double[types]; monthSurcharge = new double[types * 12];
+        }
+    }
+
+    private final Path path;
+    private volatile Rules rules = defaults();
+    private volatile long loadedModified = Long.MIN_VALUE;
+
+    PricingEngine(Path path, long reloadMillis) {
+        this.path = path;
+        reloadIfChanged();
+        if (reloadMillis > 0) {
+            ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pricing-reload"); t.setDaemon(true); return t;
+            });
+            watcher.scheduleWithFixedDelay(this::reloadIfChanged, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static PricingEngine get() { return INSTANCE; }
+
+    public double quote(Event ev) { return quote(rules, ev); }
+
+    // Prices every event against one snapshot of the rules; large lists are split across the common pool.
+    public double[] quoteAll(List<Event> events) {
+        Rules r = rules;
+        double[] out = new double[events.size()];
+        IntStream range = IntStream.range(0, out.length);
+        (out.length >= 2_048 ? range.parallel() : range).forEach(i -> out[i] = quote(r, events.get(i)));
+        return out;
+    }
+
+    private static double quote(Rules r, Event ev) {
+        int t = ev.type().ordinal();
+        double price = r.base[t] + ev.getGuestCount() * r.perGuest[t] + ev.getYearsCompleted() * r.perYear[t];
+        LocalDate d = ev.getDate();
+        if (d == null) return price;
+        double surcharge = r.monthSurcharge[t * 12 + d.getMonthValue() - 1];
+        DayOfWeek dow = d.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) surcharge += r.weekendSurcharge[t];
+        return surcharge == 0 ? price : price * (1 + surcharge);
+    }
+
+    void reloadIfChanged() {
+        long modified;
+        try { modified = Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : Long.MIN_VALUE; }
+        catch (IOException e) { return; }
+        if (modified == loadedModified) return;
+        // remember the version even when it is broken, so a bad file is reported once rather than on every poll
+        loadedModified = modified;
+        try {
+            Properties props = new Properties();
+            if (modified != Long.MIN_VALUE) {
+                try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) { props.load(in); }
+            }
+            rules = compile(props);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Pricing rules not reloaded, keeping previous ones: " + e.getMessage());
+        }
+    }
+
+    // Keys: <TYPE>.base | perGuest | perYear | weekendSurcharge | month.<1-12>; "*" applies to every type.
+    // Surcharges are fractions of the computed price. Anything not configured keeps the built-in default.
+    static Rules compile(Properties props) {
+        Rules r = defaults();
+        EventType[] types = EventType.values();
+        for (String key : props.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot < 0) throw new IllegalArgumentException("Bad pricing key: " + key);
+            String scope = key.substring(0, dot), field = key.substring(dot + 1);
+            double value = Double.parseDouble(props.getProperty(key).trim());
+            for (EventType t : types) {
+                if (!scope.equals("*") && !scope.equalsIgnoreCase(t.name())) continue;
+                int i = t.ordinal();
+                if (field.equals("base")) r.base[i] = value;
+                else if (field.equals("perGuest")) r.perGuest[i] = value;
+                else if (field.equals("perYear")) r.perYear[i] = value;
+                else if (field.equals("weekendSurcharge")) r.weekendSurcharge[i] = value;
+                else if (field.startsWith("month.")) {
+                    int month = Integer.parseInt(field.substring(6));
+                    if (month < 1 || month > 12) throw new IllegalArgumentException("Bad month in " + key);
+                    r.monthSurcharge[i * 12 + month - 1] = value;
+                }
+                else throw new IllegalArgumentException("Unknown pricing field: " + key);
+            }
+            if (!scope.equals("*") && EventType.fromName(scope) == null) throw new IllegalArgumentException("Unknown event type: " + key);
+        }
+        return r;
+    }
+
+    // The prices the event classes used to hard-code.
+    static Rules defaults() {
+        Rules r = new Rules(EventType.values().length);
+        r.base[EventType.MARRIAGE.ordinal()] = 50000;
+        r.base[EventType.BIRTHDAY.ordinal()] = 15000;
+        r.base[EventType.ENGAGEMENT.ordinal()] = 30000;
+        r.perGuest[EventType.ENGAGEMENT.ordinal()] = 500;
+        r.base[EventType.BABY_SHOWER.ordinal()] = 20000;
+        r.perGuest[EventType.BABY_SHOWER.ordinal()] = 300;
+        r.base[EventType.ANNIVERSARY.ordinal()] = 25000;
+        r.perYear[EventType.ANNIVERSARY.ordinal()] = 1000;
+        return r;
+    }
+}
+
+
+class PaymentResult {
+    final boolean approved;
+    final String bookingRef, transactionId, message;
+    final double amount;
+
+    private PaymentResult(boolean approved, String bookingRef, String transactionId, String message, double amount) {
+        this.approved = approved; this.bookingRef = bookingRef; this.transactionId = transactionId;
+        this.message = message; this.amount = amount;
+    }
+
+    static PaymentResult approved(String bookingRef, String transactionId, double amount) {
+        return new PaymentResult(true, bookingRef, transactionId, "Approved", amount);
+    }
+
+    static PaymentResult declined(String bookingRef, String reason, double amount) {
+        return new PaymentResult(false, bookingRef, null, reason, amount);
+    }
+}
+
+
+interface PaymentGateway {
+    PaymentResult charge(String bookingRef, double amount) throws Exception;
+}
+
+
+class SimulatedPaymentGateway implements PaymentGateway {
+    private final long latencyMillis;
+    private final double failureRate;
+    private final AtomicInteger txSeq = new AtomicInteger();
+
+    SimulatedPaymentGateway(long latencyMillis, double failureRate) {
+        this.latencyMillis = latencyMillis; this.failureRate = failureRate;
+    }
+
+    public PaymentResult charge(String bookingRef, double amount) throws Exception {
+        // simulate processing
+        if (latencyMillis > 0) Thread.sleep(latencyMillis);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate)
+            return PaymentResult.declined(bookingRef, "Declined by gateway", amount);
+        return PaymentResult.approved(bookingRef, "SIM-" + txSeq.incrementAndGet(), amount);
+    }
+}
+
+
+class PaymentProcessor {
+    private static final PaymentProcessor SHARED = new PaymentProcessor(
+            new SimulatedPaymentGateway(Long.getLong("eventdb.payment.latencyMs", 1500L),
+                    Double.parseDouble(System.getProperty("eventdb.payment.failureRate", "0"))),
+            Long.getLong("eventdb.payment.timeoutMs", 10_000L));
+
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger(), ADHOC_SEQ = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "payment-" + THREAD_SEQ.incrementAndGet()); t.setDaemon(true); return t;
+    });
+
+    private final PaymentGateway gateway;
+    private final long timeoutMillis;
+    // last authorization queued per booking; later ones for the same booking chain behind it
+    private final ConcurrentHashMap<String, CompletableFuture<PaymentResult>> tails = new ConcurrentHashMap<>();
+
+    PaymentProcessor(PaymentGateway gateway, long timeoutMillis) {
+        this.gateway = gateway; this.timeoutMillis = timeoutMillis;
+    }
+
+    public static PaymentProcessor shared() { return SHARED; }
+
+    private static final LatencyHistogram AUTHORIZE = Metrics.histogram("payment.authorize");
+    private static final LongAdder DECLINED = Metrics.counter("payment.declined"), ERRORS = Metrics.counter("payment.errors"),
+            TIMEOUTS = Metrics.counter("payment.timeouts");
+
+    public long timeoutMillis() { return timeoutMillis; }
+
+    // Waits at most -Deventdb.payment.timeoutMs. A timeout only stops the wait: the charge itself carries on.
+    public CompletableFuture<PaymentResult> authorize(String bookingRef, double amount) {
+        CompletableFuture<PaymentResult> timed = charge(bookingRef, amount).copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        timed.whenComplete((r, e) -> { if (e instanceof TimeoutException) TIMEOUTS.increment(); });
+        return timed;
+    }
+
+    // The gateway call itself; completes when the gateway answers, however long that takes.
+    public CompletableFuture<PaymentResult> charge(String bookingRef, double amount) {
+        if (amount <= 0) {
+            ERRORS.increment();
+            return CompletableFuture.failedFuture(new Exception("Invalid Amount"));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<PaymentResult> task = tails.compute(bookingRef, (k, prev) -> {
+            CompletableFuture<?> after = prev == null ? CompletableFuture.completedFuture(null) : prev.handle((r, e) -> null);
+            return after.thenApplyAsync(ignored -> {
+                try { return gateway.charge(bookingRef, amount); }
+                catch (Exception e) { throw new CompletionException(e); }
+            }, EXECUTOR);
+        });
+        task.whenComplete((r, e) -> {
+            tails.remove(bookingRef, task);
+            AUTHORIZE.recordSince(start);
+            if (e != null) ERRORS.increment();
+            else if (!r.approved) DECLINED.increment();
+        });
+        return task;
+    }
+
+    public void processPayment(double amount) throws Exception {
+        PaymentResult r = await(authorize("adhoc-" + ADHOC_SEQ.incrementAndGet(), amount));
+        if (!r.approved) throw new Exception(r.message);
+    }
+
+    static <T> T await(CompletableFuture<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) throw new Exception("Payment timed out");
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+}
+
+
+class BookingService {
+    enum Stage { VALIDATE, PRICE, PAY, PERSIST }
+
+    // Who the operator is booking for. id stays 0 until the first booking stores the customer; it is negative
+    // when the customer only made it into the local journal.
+    static final class Customer {
+        final String name, phone, address;
+        volatile int id;
+        Customer(String name, String phone, String address) { this.name = name; this.phone = phone; this.address = address; }
+    }
+
+    static final class Outcome {
+        boolean booked;
+        String error;
+        int customerId = -1;
+        Event event;
+        PaymentResult payment;
+        final long[] stageNanos = new long[Stage.values().length];
+
+        Outcome fail(String message) { this.error = message; return this; }
+    }
+
+    // Why a checkout did not book: the customer was not charged unless the reason is PENDING or NOT_SAVED.
+    static final class CheckoutFailure extends Exception {
+        enum Reason { EXPIRED, DECLINED, GATEWAY_ERROR, PENDING, NOT_SAVED }
+        final Reason reason;
+
+        CheckoutFailure(Reason reason, String message, Throwable cause) { super(message, cause); this.reason = reason; }
+    }
+
+    private static final BookingService SHARED = new BookingService(new CustomerDAO(), AvailabilityIndex.get(), PaymentProcessor.shared(), BookingJournal.get(), SlotHolds.get());
+
+    private final CustomerDAO dao;
+    private final AvailabilityIndex slots;
+    private final PaymentProcessor payments;
+    private final BookingJournal journal;
+    private final SlotHolds holds;
+    private final DedupeCache<SlotHolds.Hold> checkouts = new DedupeCache<>("checkout.dedupe",
+            Integer.getInteger("eventdb.dedupe.size", 10_000), Long.getLong("eventdb.dedupe.ttlMs", 60 * 60_000L));
+
+    BookingService(CustomerDAO dao, AvailabilityIndex slots, PaymentProcessor payments, BookingJournal journal, SlotHolds holds) {
+        this.dao = dao; this.slots = slots; this.payments = payments; this.journal = journal; this.holds = holds;
+    }
+
+    public static BookingService shared() { return SHARED; }
+
+    // Runs the whole pipeline synchronously: validation -> pricing -> hold -> checkout (payment, then persistence).
+    // Going through checkout gives it the same dedupe and the same "keep the hold until the charge settles" rule.
+    public Outcome book(BookingRequest r) {
+        Outcome out = new Outcome();
+        long t = System.nanoTime();
+        ValidationReport report = ValidationUtils.validate(r);
+        t = mark(out, Stage.VALIDATE, t);
+        if (!report.isValid()) return out.fail(report.errors().get(0).message);
+
+        Event ev = EventType.fromName(r.eventType).create(r);
+        double price = ev.calculatePrice();
+        out.event = ev;
+        t = mark(out, Stage.PRICE, t);
+
+        Customer c = new Customer(r.name.trim(), r.phone.trim(), r.address.trim());
+        String ref = bookingRef(c, ev);
+        // a retry of a checkout that is still running or already booked goes straight back to it
+        if (!isCheckedOut(ref)) {
+            try {
+                if (hold(c, ev, price) == null) return out.fail("Slot already booked");
+            } catch (IllegalStateException notLoaded) {
+                return out.fail(notLoaded.getMessage());
+            }
+        }
+        SlotHolds.Hold booked = null;
+        try {
+            booked = checkout(ref);
+            out.payment = booked.payment;
+            out.customerId = booked.customer.id;
+        } catch (CheckoutFailure e) {
+            switch (e.reason) {
+                case EXPIRED: return out.fail("Slot already booked");
+                case PENDING: return out.fail("Payment pending: " + e.getMessage());
+                case NOT_SAVED: return out.fail("Persist failed: " + e.getMessage());
+                default: return out.fail("Payment failed: " + e.getMessage());
+            }
+        } catch (Exception e) {
+            return out.fail("Payment failed: " + e.getMessage());
+        } finally {
+            long paid = booked == null ? 0 : booked.paidNanos, now = System.nanoTime();
+            out.stageNanos[Stage.PAY.ordinal()] = (paid == 0 ? now : paid) - t;
+            out.stageNanos[Stage.PERSIST.ordinal()] = paid == 0 ? 0 : now - paid;
+        }
+        out.booked = true;
+        return out;
+    }
+
+    // Takes the slot out of circulation for -Deventdb.holdSeconds while the customer pays; null if it is taken.
+    // Throws IllegalStateException until AvailabilityIndex has loaded.
+    // The hold keeps the quoted price; that is what is charged and stored.
+    public SlotHolds.Hold hold(Customer c, Event ev) {
+        return hold(c, ev, ev.calculatePrice());
+    }
+
+    public SlotHolds.Hold hold(Customer c, Event ev, double price) {
+        return holds.place(bookingRef(c, ev), c, ev, price);
+    }
+
+    public SlotHolds.Hold findHold(String bookingRef) { return holds.find(bookingRef); }
+
+    // True while a checkout for this reference is running or has succeeded within -Deventdb.dedupe.ttlMs.
+    public boolean isCheckedOut(String bookingRef) { return checkouts.contains(bookingRef); }
+
+    public void releaseHold(SlotHolds.Hold h) { holds.cancel(h); }
+
+    // Pays for the live hold on bookingRef and only then stores the booking. The reference is the idempotency key:
+    // a double click or client retry gets the first checkout's booked hold back rather than a second charge.
+    // Waiting gives up after -Deventdb.payment.timeoutMs, but the checkout stays in flight: the hold stays claimed
+    // and a retry waits on the same charge until the gateway answers.
+    public SlotHolds.Hold checkout(String bookingRef) throws Exception {
+        CompletableFuture<SlotHolds.Hold> settled = checkouts.run(bookingRef, () -> payAndSave(bookingRef));
+        try {
+            return PaymentProcessor.await(settled.copy().orTimeout(payments.timeoutMillis(), TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            if (settled.isDone()) throw e;
+            throw new CheckoutFailure(CheckoutFailure.Reason.PENDING,
+                    "The payment gateway has not answered yet. The slot stays held; try again shortly and you will not be charged twice.", null);
+        }
+    }
+
+    // Settles only once the gateway has answered: a declined payment gives the slot back, an approved one books it.
+    private CompletableFuture<SlotHolds.Hold> payAndSave(String bookingRef) throws Exception {
+        SlotHolds.Hold h = holds.find(bookingRef);
+        if (h == null || !holds.claim(h))
+            throw new CheckoutFailure(CheckoutFailure.Reason.EXPIRED, "The hold on this slot has expired. Please confirm the booking again.", null);
+        return payments.charge(h.ref, h.price).handle((paid, err) -> {
+            if (err != null || !paid.approved) {
+                holds.release(h);
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                throw new CompletionException(err == null
+                        ? new CheckoutFailure(CheckoutFailure.Reason.DECLINED, paid.message, null)
+                        : new CheckoutFailure(CheckoutFailure.Reason.GATEWAY_ERROR, cause.getMessage(), cause));
+            }
+            h.paidNanos = System.nanoTime();
+            holds.complete(h);
+            try {
+                saveBooking(h.customer, h.event, h.price);
+            } catch (Exception e) {
+                throw new CompletionException(new CheckoutFailure(CheckoutFailure.Reason.NOT_SAVED,
+                        "Payment " + paid.transactionId + " succeeded but the booking could not be saved: " + e.getMessage(), e));
+            }
+            h.payment = paid;
+            return h;
+        });
+    }
+
+    // Customer and booking go to the DB in one transaction, or both to the journal when the DB is down.
+    // The slot must already be reserved; it is released only if the booking could not be stored anywhere.
+    // price is what the customer was charged, not a fresh quote.
+    // Only an unreachable database sends the booking to the journal; any other error would fail again on replay, so
+    // it goes back to the caller.
+    public void saveBooking(Customer c, Event ev, double price) throws Exception {
+        // a customer only in the journal has no row for the booking to point at yet
+        if (c.id >= 0) {
+            try {
+                c.id = dao.saveCustomerAndBooking(c.id, c.name, c.phone, c.address, ev.type().displayName,
+                        ev.getDate(), ev.getTime(), price, ev.getVenue(), ev.extraDetails(), bookingRef(c, ev)).customerId;
+                return;
+            } catch (Exception e) {
+                if (!isUnreachable(e)) {
+                    release(ev);
+                    throw e;
+                }
+            }
+        }
+        try {
+            if (c.id == 0) c.id = journal.appendCustomer(c.name, c.phone, c.address);
+            journalBooking(c.id, ev, price).join();
+        } catch (Exception e) {
+            release(ev);
+            throw e;
+        }
+    }
+
+    // No connection, a pool or queue timeout, or SQLState class 08 (connection exception).
+    static boolean isUnreachable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException || t instanceof SQLNonTransientConnectionException) return true;
+            if (t instanceof SQLException && String.valueOf(((SQLException) t).getSQLState()).startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    public void release(Event ev) { slots.release(ev.getVenue(), ev.getDate(), ev.getTime()); }
+    public LocalDateTime nextFreeSlot(Event ev) { return slots.nextFreeSlot(ev.getVenue(), ev.getDate(), ev.getTime()); }
+
+    private CompletableFuture<Void> journalBooking(int custId, Event ev, double price) {
+        return journal.appendBooking(custId, ev.type().displayName, ev.getDate(), ev.getTime(), price, ev.getVenue(), ev.extraDetails());
+    }
+
+    // Keyed by phone rather than customer_id, which a first-time customer only gets once the booking is stored.
+    static String bookingRef(Customer c, Event ev) {
+        return CustomerCache.normalizePhone(c.phone) + "|" + ev.type().displayName + "|" + ev.getDate() + "|" + ev.getTime() + "|" + ev.getVenue();
+    }
+
+    private static long mark(Outcome out, Stage stage, long since) {
+        long now = System.nanoTime();
+        out.stageNanos[stage.ordinal()] = now - since;
+        return now;
+    }
+}
+
+
+class PlaceholderTextField extends JTextField {
+    private String placeholder;
+    private Color placeholderColor = Color.GRAY;
+    private boolean showPlaceholderAlways = false;
+
+    public PlaceholderTextField(String placeholder) {
+        super();
+        this.placeholder = placeholder;
+      
+        setOpaque(true);
+        
+        setMargin(new Insets(2,6,2,2));
+    }
+
+    public PlaceholderTextField(String placeholder, int columns) {
+        super(columns);
+        this.placeholder = placeholder;
+        setOpaque(true);
+        setMargin(new Insets(2,6,2,2));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if ((getText() == null || getText().length() == 0) && ! (showPlaceholderAlways && getText()!=null)) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setColor(placeholderColor);
+            Font prev = g2.getFont();
+            g2.setFont(prev.deriveFont(Font.ITALIC));
+            Insets ins = getInsets();
+            int y = getHeight() - ins.bottom - 6;
+            g2.drawString(placeholder, ins.left, y);
+            g2.setFont(prev);
+            g2.dispose();
+        }
+    }
+
+    public void setPlaceholderColor(Color c){ this.placeholderColor = c; }
+    public void setShowPlaceholderAlways(boolean v){ this.showPlaceholderAlways = v; }
+}
+
+class ValidationUtils {
+    static final String PHONE_MSG = "Enter valid phone number (7-15 digits).";
+    static final String DATE_MSG = "Enter valid date in DD/MM/YYYY format.";
+    static final String TIME_MSG = "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).";
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final DateTimeFormatter DISPLAY_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter DISPLAY_TIME = DateTimeFormatter.ofPattern("hh:mm a", Locale.ENGLISH);
+
+    public static boolean isValidPhone(String phone) {
+        if (phone == null) return false;
+        int n = phone.length();
+        if (n < 7 || n > 15) return false;
+        for (int i = 0; i < n; i++) {
+            char c = phone.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    public static boolean isValidDate(String dateStr) { return dateStr != null && packDate(dateStr) != INVALID; }
+
+    public static boolean isValidTime(String timeStr) { return timeStr != null && packTime(timeStr) != INVALID; }
+
+    public static LocalDate parseDate(String dateStr) {
+        long epochDay = dateStr == null ? INVALID : packDate(dateStr);
+        return epochDay == INVALID ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public static LocalTime parseTime(String timeStr) {
+        long minute = timeStr == null ? INVALID : packTime(timeStr);
+        return minute == INVALID ? null : LocalTime.of((int) (minute / 60), (int) (minute % 60));
+    }
+
+    public static String formatDate(LocalDate d) { return d == null ? "" : DISPLAY_DATE.format(d); }
+    public static String formatTime(LocalTime t) { return t == null ? "" : DISPLAY_TIME.format(t); }
+
+    // Returns the value, or -1 when the text is not a non-negative int.
+    public static int parseNonNegativeInt(String s) {
+        if (s == null) return -1;
+        int n = s.length();
+        if (n == 0 || n > 9) return -1;
+        int v = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    public static ValidationReport validate(BookingRequest... requests) {
+        ValidationReport report = new ValidationReport(requests.length);
+        for (int i = 0; i < requests.length; i++) validateInto(report, i, requests[i]);
+        return report;
+    }
+
+    static void validateInto(ValidationReport report, int index, BookingRequest r) {
+        if (isBlank(r.name)) report.add(index, "name", "Name is required.");
+        if (!isValidPhone(r.phone)) report.add(index, "phone", PHONE_MSG);
+        if (isBlank(r.address)) report.add(index, "address", "Address is required.");
+        EventType type = EventType.fromName(r.eventType);
+        if (type == null) report.add(index, "eventType", "Unknown event type: " + r.eventType);
+        else for (String key : type.requiredExtras)
+            if (!r.extras.containsKey(key)) report.add(index, key, key + " is required.");
+        if (r.date == null || packDate(r.date) == INVALID) report.add(index, "date", DATE_MSG);
+        if (r.time == null || packTime(r.time) == INVALID) report.add(index, "time", TIME_MSG);
+        for (Map.Entry<String, String> e : r.extras.entrySet()) {
+            if (isBlank(e.getValue())) report.add(index, e.getKey(), e.getKey() + " is required.");
+            else if (BookingRequest.isNumericField(e.getKey()) && parseNonNegativeInt(e.getValue().trim()) < 0)
+                report.add(index, e.getKey(), e.getKey() + " must be a non-negative integer.");
+        }
+    }
+
+    private static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
+
+    // d/M/yyyy or dd/MM/yyyy -> epoch day
+    private static long packDate(String s) {
+        int i = skipSpaces(s, 0), end = trimEnd(s);
+        int day = 0, month = 0, year = 0, digits = 0;
+        for (; i < end && isDigit(s.charAt(i)); i++, digits++) day = day * 10 + (s.charAt(i) - '0');
+        if (digits < 1 || digits > 2 || i >= end || s.charAt(i++) != '/') return INVALID;
+        for (digits = 0; i < end && isDigit(s.charAt(i)); i++, digits++) month = month * 10 + (s.charAt(i) - '0');
+        if (digits < 1 || digits > 2 || i >= end || s.charAt(i++) != '/') return INVALID;
+        for (digits = 0; i < end && isDigit(s.charAt(i)); i++, digits++) year = year * 10 + (s.charAt(i) - '0');
+        if (digits != 4 || i != end) return INVALID;
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) return INVALID;
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    // h:mm AM/PM or hh:mm AM/PM -> minute of day
+    private static long packTime(String s) {
+        int i = skipSpaces(s, 0), end = trimEnd(s);
+        int hour = 0, minute = 0, digits = 0;
+        for (; i < end && isDigit(s.charAt(i)); i++, digits++) hour = hour * 10 + (s.charAt(i) - '0');
+        if (digits < 1 || digits > 2 || i >= end || s.charAt(i++) != ':') return INVALID;
+        for (digits = 0; i < end && isDigit(s.charAt(i)); i++, digits++) minute = minute * 10 + (s.charAt(i) - '0');
+        if (digits != 2) return INVALID;
+        i = skipSpaces(s, i);
+        if (end - i != 2) return INVALID;
+        char m = Character.toUpperCase(s.charAt(i)), suffix = Character.toUpperCase(s.charAt(i + 1));
+        if ((m != 'A' && m != 'P') || suffix != 'M') return INVALID;
+        if (hour < 1 || hour > 12 || minute > 59) return INVALID;
+        return (hour % 12 + (m == 'P' ? 12 : 0)) * 60L + minute;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+
+    private static int skipSpaces(String s, int i) {
+        while (i < s.length() && s.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static int trimEnd(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+}
+
+
+class BookingRequest {
+    final String name, phone, address, eventType, date, time, venue;
+    final Map<String, String> extras = new LinkedHashMap<>();
+
+    BookingRequest(String name, String phone, String address, String eventType, String date, String time, String venue) {
+        this.name = name; this.phone = phone; this.address = address; this.eventType = eventType;
+        this.date = date; this.time = time; this.venue = venue;
+    }
+
+    public BookingRequest extra(String key, String value) { extras.put(key, value); return this; }
+    public String extra(String key) { return extras.get(key); }
+
+    static boolean isNumericField(String key) { return "guests".equals(key) || "years".equals(key); }
+}
+
+
+class ValidationReport {
+    static final class FieldError {
+        final int index; final String field, message;
+        FieldError(int index, String field, String message) { this.index = index; this.field = field; this.message = message; }
+        @Override public String toString() { return "#" + index + " " + field + ": " + message; }
+    }
+
+    private final int size;
+    private final List<FieldError> errors = new ArrayList<>();
+
+    ValidationReport(int size) { this.size = size; }
+
+    void add(int index, String field, String message) { errors.add(new FieldError(index, field, message)); }
+
+    public boolean isValid() { return errors.isEmpty(); }
+    public int size() { return size; }
+    public List<FieldError> errors() { return errors; }
+
+    public boolean isValid(int index) {
+        for (FieldError e : errors) if (e.index == index) return false;
+        return true;
+    }
+}
+
+class UiTasks {
+    interface Work<T> { T call() throws Exception; }
+
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ui-task-" + THREAD_SEQ.incrementAndGet()); t.setDaemon(true); return t;
+    });
+
+    private static final LatencyHistogram TASKS = Metrics.histogram("ui.task");
+
+    // Runs work off the EDT with the given components disabled, then reports back on the EDT.
+    public static <T> void run(Work<T> work, Consumer<T> onSuccess, Consumer<Exception> onFailure, JComponent... busy) {
+        for (JComponent c : busy) c.setEnabled(false);
+        long start = System.nanoTime();
+        EXECUTOR.execute(() -> {
+            T result = null; Exception error = null;
+            try { result = work.call(); } catch (Exception e) { error = e; }
+            TASKS.recordSince(start);
+            T r = result; Exception err = error;
+            SwingUtilities.invokeLater(() -> {
+                for (JComponent c : busy) c.setEnabled(true);
+                if (err == null) onSuccess.accept(r); else onFailure.accept(err);
+            });
+        });
+    }
+}
+
+
+abstract class AppPage extends JPanel {
+    final String title;
+
+    AppPage(String title, int width, int height) {
+        this.title = title;
+        setLayout(null); setPreferredSize(new Dimension(width, height));
+    }
+
+    // Pages are reused for every booking, so reopening one just clears what the last operator typed.
+    void reset() {
+        for (Component c : getComponents())
+            if (c instanceof JTextComponent && ((JTextComponent) c).isEditable()) ((JTextComponent) c).setText("");
+    }
+}
+
+
+class AppWindow extends JFrame {
+    private static AppWindow instance;
+
+    private final CardLayout cards = new CardLayout();
+    private final JPanel deck = new JPanel(cards);
+    private final CustomerForm customerForm = new CustomerForm();
+    private final EventSelection eventSelection = new EventSelection();
+    // everything past the first two pages is built on first use, or by preload() once the first frame is up
+    private final Map<EventType, EventForm> forms = new EnumMap<>(EventType.class);
+    private PaymentPage paymentPage;
+    private AdminBookingsPage adminPage;
+    private SearchPage searchPage;
+    private ReportPage reportPage;
+    private AppPage current, beforeAside;
+
+    // EDT only.
+    static AppWindow get() {
+        if (instance == null) instance = new AppWindow();
+        return instance;
+    }
+
+    private AppWindow() {
+        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setContentPane(deck);
+        addPage(customerForm); addPage(eventSelection);
+
+        JMenuBar bar = new JMenuBar();
+        JMenu admin = new JMenu("Admin");
+        JMenuItem browse = new JMenuItem("Browse Bookings");
+        browse.addActionListener(e -> openAdmin());
+        JMenuItem find = new JMenuItem("Find Booking or Customer");
+        find.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        find.addActionListener(e -> openSearch());
+        JMenuItem report = new JMenuItem("Revenue Report");
+        report.addActionListener(e -> openReport());
+        admin.add(browse); admin.add(find); admin.add(report); bar.add(admin);
+        setJMenuBar(bar);
+
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowOpened(WindowEvent e) {
+                Metrics.markStartup("startup.firstFrame");
+                SwingUtilities.invokeLater(() -> preload(Arrays.asList(EventType.values()).iterator()));
+            }
+        });
+
+        show(customerForm);
+        setLocationRelativeTo(null);
+    }
+
+    private <P extends AppPage> P addPage(P page) {
+        deck.add(page, page.getClass().getName());
+        return page;
+    }
+
+    // One page per EDT turn, so a click arriving meanwhile waits for at most one page to be built.
+    private void preload(Iterator<EventType> types) {
+        if (!types.hasNext()) {
+            paymentPage();
+            return;
+        }
+        form(types.next());
+        SwingUtilities.invokeLater(() -> preload(types));
+    }
+
+    private EventForm form(EventType type) {
+        EventForm form = forms.get(type);
+        if (form == null) forms.put(type, form = addPage(newForm(type)));
+        return form;
+    }
+
+    private static EventForm newForm(EventType type) {
+        switch (type) {
+            case MARRIAGE: return new MarriageForm();
+            case BIRTHDAY: return new BirthdayForm();
+            case ENGAGEMENT: return new EngagementForm();
+            case BABY_SHOWER: return new BabyShowerForm();
+            default: return new AnniversaryForm();
+        }
+    }
+
+    private PaymentPage paymentPage() {
+        if (paymentPage == null) paymentPage = addPage(new PaymentPage());
+        return paymentPage;
+    }
+
+    private void show(AppPage page) {
+        cards.show(deck, page.getClass().getName());
+        current = page;
+        setTitle(page.title);
+        deck.setPreferredSize(page.getPreferredSize());
+        pack();
+    }
+
+    void newCustomer() {
+        customerForm.reset();
+        show(customerForm);
+    }
+
+    void selectEvent(BookingService.Customer customer) {
+        eventSelection.customer = customer;
+        show(eventSelection);
+    }
+
+    void openForm(EventType type, BookingService.Customer customer) {
+        EventForm form = form(type);
+        form.reset();
+        form.customer = customer;
+        show(form);
+    }
+
+    void openPayment(SlotHolds.Hold hold) {
+        paymentPage().open(hold);
+        show(paymentPage);
+    }
+
+    void openAdmin() {
+        if (adminPage == null) adminPage = addPage(new AdminBookingsPage());
+        adminPage.refresh();
+        openAside(adminPage);
+    }
+
+    void openSearch() {
+        if (searchPage == null) searchPage = addPage(new SearchPage());
+        openAside(searchPage);
+        searchPage.focusQuery();
+    }
+
+    void openReport() {
+        if (reportPage == null) reportPage = addPage(new ReportPage());
+        reportPage.refresh();
+        openAside(reportPage);
+    }
+
+    // Admin, search and report pages sit beside the booking flow; closing one returns to where the operator was.
+    private void openAside(AppPage page) {
+        if (current != adminPage && current != searchPage && current != reportPage) beforeAside = current;
+        show(page);
+    }
+
+    void closeAside() {
+        show(beforeAside);
+    }
+}
+
+
+class CustomerForm extends AppPage {
+    public CustomerForm() {
+        super("Customer Details", 520, 420);
+
+        JLabel header = new JLabel("Enter Customer Details", SwingConstants.CENTER);
+        header.setBounds(60,10,400,30); header.setFont(header.getFont().deriveFont(18f));
+
+        JLabel l1 = new JLabel("Name:"), l2 = new JLabel("Phone:"), l3 = new JLabel("Address:");
+        JTextField t1 = new JTextField(), t2 = new JTextField(), t3 = new JTextField();
+        JButton next = new JButton("Next"); next.setBounds(200,310,120,40);
+
+        l1.setBounds(60,80,150,30); t1.setBounds(220,80,240,30);
+        l2.setBounds(60,130,150,30); t2.setBounds(220,130,240,30);
+        l3.setBounds(60,180,150,30); t3.setBounds(220,180,240,80);
+
+        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3); add(next);
+
+        next.addActionListener(e -> {
+            String name = t1.getText().trim();
+            String phone = t2.getText().trim();
+            String address = t3.getText().trim();
+
+            if (name.isEmpty() || phone.isEmpty() || address.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            if (!ValidationUtils.isValidPhone(phone)) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.PHONE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            // stored together with the first booking, so abandoning here leaves no orphan customer row
+            AppWindow.get().selectEvent(new BookingService.Customer(name, phone, address));
+        });
+    }
+}
+
+
+class EventSelection extends AppPage {
+    BookingService.Customer customer;
+    public EventSelection() {
+        super("Select Event", 520, 640);
+
+        JLabel header = new JLabel("Select which event you want to organise", SwingConstants.CENTER);
+        header.setBounds(60,10,400,30); header.setFont(header.getFont().deriveFont(16f));
+        add(header);
+
+        EventType[] events = EventType.values();
+        for(int i=0;i<events.length;i++){
+            JButton b = new JButton(events[i].displayName); b.setBounds(160,60+i*95,200,60); b.setFont(b.getFont().deriveFont(14f));
+            add(b);
+            EventType type=events[i];
+            b.addActionListener(e -> AppWindow.get().openForm(type, customer));
+        }
+
+        JButton newCustomer = new JButton("New Customer"); newCustomer.setBounds(160,530,200,40);
+        add(newCustomer);
+        newCustomer.addActionListener(e -> AppWindow.get().newCustomer());
+    }
+}
+
+
+abstract class EventForm extends AppPage {
+    BookingService.Customer customer;
+    EventForm(String title) {
+        super(title, 560, 520);
+    }
+
+    // Holding the slot is an in-memory step; the booking is only written once payment succeeds.
+    void submitBooking(Event ev) {
+        BookingService service = BookingService.shared();
+        SlotHolds.Hold hold;
+        try {
+            hold = service.hold(customer, ev);
+        } catch (IllegalStateException notLoaded) {
+            JOptionPane.showMessageDialog(this, notLoaded.getMessage(), "Not Ready", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        if (hold == null) {
+            LocalDateTime next = service.nextFreeSlot(ev);
+            JOptionPane.showMessageDialog(this, "This venue is already booked at that time.\nNext free slot: "
+                    + ValidationUtils.formatDate(next.toLocalDate()) + " " + ValidationUtils.formatTime(next.toLocalTime()), "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        AppWindow.get().openPayment(hold);
+    }
+}
+
+
+class MarriageForm extends EventForm {
+    public MarriageForm(){
+        super("Marriage Event");
+
+        JLabel header = new JLabel("Marriage Event Details",SwingConstants.CENTER);
+        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+
+        JLabel l1=new JLabel("Bride Name:"), l2=new JLabel("Groom Name:"), l3=new JLabel("Venue:");
+        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+
+        JTextField tb=new JTextField(), tg=new JTextField(), tvenue=new JTextField();
+        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
+        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
+
+        tdate.setBounds(260,260,180,30);
+        ttime.setBounds(260,320,180,30);
+
+        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
+        confirm.setBounds(140,400,120,50); back.setBounds(310,400,120,50);
+
+        l1.setBounds(60,70,150,30); tb.setBounds(260,70,180,30);
+        l2.setBounds(60,120,150,30); tg.setBounds(260,120,180,30);
+        l3.setBounds(60,170,150,30); tvenue.setBounds(260,170,180,30);
+        l4.setBounds(60,260,150,30);
+        l5.setBounds(60,320,150,30);
+
+        add(header); add(l1); add(tb); add(l2); add(tg); add(l3); add(tvenue);
+        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
+
+        confirm.addActionListener(e -> {
+            String bride = tb.getText().trim();
+            String groom = tg.getText().trim();
+            String venue = tvenue.getText().trim();
+            String date = tdate.getText().trim();
+            String time = ttime.getText().trim();
+
+            if (bride.isEmpty() || groom.isEmpty() || venue.isEmpty() || date.isEmpty() || time.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalDate eventDate = ValidationUtils.parseDate(date);
+            if (eventDate == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalTime eventTime = ValidationUtils.parseTime(time);
+            if (eventTime == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.TIME_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            MarriageEvent ev=new MarriageEvent();
+            ev.setBride(bride); ev.setGroom(groom);
+            ev.setDetails(eventDate,eventTime,venue);
+
+            submitBooking(ev);
+        });
+
+        back.addActionListener(e -> AppWindow.get().selectEvent(customer));
+    }
+}
+
+
+class BirthdayForm extends EventForm {
+    public BirthdayForm(){
+        super("Birthday Party");
+
+        JLabel header = new JLabel("Birthday Party Details",SwingConstants.CENTER);
+        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+
+        JLabel l0=new JLabel("Birthday Name:"), l1=new JLabel("Venue:");
+        JLabel l2=new JLabel("Date:"), l3=new JLabel("Time:");
+
+        JTextField tb=new JTextField(), tvenue=new JTextField();
+        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
+        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
+
+        l0.setBounds(60,70,150,30); tb.setBounds(260,70,180,30);
+        l1.setBounds(60,120,150,30); tvenue.setBounds(260,120,180,30);
+        l2.setBounds(60,200,150,30); tdate.setBounds(260,200,180,30);
+        l3.setBounds(60,260,150,30); ttime.setBounds(260,260,180,30);
+
+        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
+        confirm.setBounds(140,360,120,50); back.setBounds(310,360,120,50);
+
+        add(header); add(l0); add(tb); add(l1); add(tvenue);
+        add(l2); add(tdate); add(l3); add(ttime); add(confirm); add(back);
+
+        confirm.addActionListener(e -> {
+            String name = tb.getText().trim(); String venue = tvenue.getText().trim();
+            String date = tdate.getText().trim(); String time = ttime.getText().trim();
+
+            if (name.isEmpty() || venue.isEmpty() || date.isEmpty() || time.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalDate eventDate = ValidationUtils.parseDate(date);
+            if (eventDate == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalTime eventTime = ValidationUtils.parseTime(time);
+            if (eventTime == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.TIME_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            BirthdayEvent ev=new BirthdayEvent();
+            ev.setBirthdayName(name); ev.setDetails(eventDate,eventTime,venue);
+
+            submitBooking(ev);
+        });
+
+        back.addActionListener(e -> AppWindow.get().selectEvent(customer));
+    }
+}
+
+class EngagementForm extends EventForm {
+    public EngagementForm(){
+        super("Engagement Ceremony");
+
+        JLabel header = new JLabel("Engagement Ceremony Details",SwingConstants.CENTER);
+        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+
+        JLabel l1=new JLabel("Couple Names:"), l2=new JLabel("Venue Preference:"), l3=new JLabel("Guest Count:");
+        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+
+        JTextField t1=new JTextField(), t2=new JTextField(), t3=new JTextField();
+        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
+        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
+
+        l1.setBounds(60,70,150,30); t1.setBounds(260,70,180,30);
+        l2.setBounds(60,120,150,30); t2.setBounds(260,120,180,30);
+        l3.setBounds(60,170,150,30); t3.setBounds(260,170,180,30);
+        l4.setBounds(60,230,150,30); tdate.setBounds(260,230,180,30);
+        l5.setBounds(60,290,150,30); ttime.setBounds(260,290,180,30);
+
+        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
+        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
+
+        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
+        add(l4); add(tdate); add(l5); add(ttime);
+        add(confirm); add(back);
+
+        confirm.addActionListener(e -> {
+            String couple = t1.getText().trim(); String venuePref = t2.getText().trim();
+            String gText = t3.getText().trim();
+            String date = tdate.getText().trim(); String time = ttime.getText().trim();
+
+            if (couple.isEmpty() || venuePref.isEmpty() || gText.isEmpty() || date.isEmpty() || time.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            int guests = ValidationUtils.parseNonNegativeInt(gText);
+            if (guests < 0) {
+                JOptionPane.showMessageDialog(this, "Guest count must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalDate eventDate = ValidationUtils.parseDate(date);
+            if (eventDate == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalTime eventTime = ValidationUtils.parseTime(time);
+            if (eventTime == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.TIME_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            EngagementEvent ev = new EngagementEvent();
+            ev.setCoupleNames(couple); ev.setVenuePreference(venuePref); ev.setGuestCount(guests);
+            ev.setDetails(eventDate,eventTime,venuePref);
+
+            submitBooking(ev);
+        });
+
+        back.addActionListener(e -> AppWindow.get().selectEvent(customer));
+    }
+}
+
+
+class BabyShowerForm extends EventForm {
+    public BabyShowerForm(){
+        super("Baby Shower");
+
+        JLabel header = new JLabel("Baby Shower Details",SwingConstants.CENTER);
+        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+
+        JLabel l1=new JLabel("Mother's Name:"), l2=new JLabel("Theme:"), l3=new JLabel("Guest Count:");
+        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+
+        JTextField t1=new JTextField(), t2=new JTextField(), t3=new JTextField();
         PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
         PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
 
-        l0.setBounds(60,70,150,30); tb.setBounds(260,70,180,30);
-        l1.setBounds(60,120,150,30); tvenue.setBounds(260,120,180,30);
-        l2.setBounds(60,200,150,30); tdate.setBounds(260,200,180,30);
-        l3.setBounds(60,260,150,30); ttime.setBounds(260,260,180,30);
+        l1.setBounds(60,70,150,30); t1.setBounds(260,70,180,30);
+        l2.setBounds(60,120,150,30); t2.setBounds(260,120,180,30);
+        l3.setBounds(60,170,150,30); t3.setBounds(260,170,180,30);
+        l4.setBounds(60,230,150,30); tdate.setBounds(260,230,180,30);
+        l5.setBounds(60,290,150,30); ttime.setBounds(260,290,180,30);
 
         JButton confirm=new JButton("Confirm"), back=new JButton("Back");
-        confirm.setBounds(140,360,120,50); back.setBounds(310,360,120,50);
+        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
 
-        add(header); add(l0); add(tb); add(l1); add(tvenue);
-        add(l2); add(tdate); add(l3); add(ttime); add(confirm); add(back);
+        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
+        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
 
         confirm.addActionListener(e -> {
-            String name = tb.getText().trim(); String venue = tvenue.getText().trim();
-            String date = tdate.getText().trim(); String time = ttime.getText().trim();
+            String mother = t1.getText().trim(), theme = t2.getText().trim(), gText = t3.getText().trim();
+            String date = tdate.getText().trim(), time = ttime.getText().trim();
 
-            if (name.isEmpty() || venue.isEmpty() || date.isEmpty() || time.isEmpty()) {
+            if (mother.isEmpty() || theme.isEmpty() || gText.isEmpty() || date.isEmpty() || time.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            if (!ValidationUtils.isValidDate(date)) {
-                JOptionPane.showMessageDialog(this, "Enter valid date in DD/MM/YYYY format.", "Validation", JOptionPane.WARNING_MESSAGE);
+            int guests = ValidationUtils.parseNonNegativeInt(gText);
+            if (guests < 0) {
+                JOptionPane.showMessageDialog(this, "Guest count must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            if (!ValidationUtils.isValidTime(time)) {
-                JOptionPane.showMessageDialog(this, "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).", "Validation", JOptionPane.WARNING_MESSAGE);
+            LocalDate eventDate = ValidationUtils.parseDate(date);
+            if (eventDate == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalTime eventTime = ValidationUtils.parseTime(time);
+            if (eventTime == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.TIME_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
 
-            BirthdayEvent ev=new BirthdayEvent();
-            ev.setBirthdayName(name); ev.setDetails(date,time,venue);
-
-            try { if(custId!=-1) new CustomerDAO().saveBooking(custId,"Birthday Party",ev.getDate(),ev.getTime(),ev.calculatePrice(),ev.getVenue(),ev.extraDetails()); }
-            catch(Exception ex) { JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving booking. Booking not saved in DB.","Warning",JOptionPane.WARNING_MESSAGE); }
+            BabyShowerEvent ev = new BabyShowerEvent();
+            ev.setMotherName(mother); ev.setTheme(theme); ev.setGuestCount(guests);
+            ev.setDetails(eventDate,eventTime,"");
 
-            new PaymentPage(custId,"Birthday Party",ev,prevPage).setVisible(true);
-            dispose();
+            submitBooking(ev);
         });
 
-        back.addActionListener(e -> { prevPage.setVisible(true); dispose(); });
+        back.addActionListener(e -> AppWindow.get().selectEvent(customer));
     }
 }
 
-class EngagementForm extends EventForm {
-    public EngagementForm(int custId, EventSelection prevPage){
-        super(custId,prevPage); setTitle("Engagement Ceremony");
 
-        JLabel header = new JLabel("Engagement Ceremony Details",SwingConstants.CENTER);
+class AnniversaryForm extends EventForm {
+    public AnniversaryForm(){
+        super("Anniversary Celebration");
+
+        JLabel header = new JLabel("Anniversary Celebration Details",SwingConstants.CENTER);
         header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
 
-        JLabel l1=new JLabel("Couple Names:"), l2=new JLabel("Venue Preference:"), l3=new JLabel("Guest Count:");
+        JLabel l1=new JLabel("Couple Names:"), l2=new JLabel("Years Completed:"), l3=new JLabel("Venue Type:");
         JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
 
         JTextField t1=new JTextField(), t2=new JTextField(), t3=new JTextField();
@@ -435,270 +3790,1595 @@ class EngagementForm extends EventForm {
         l4.setBounds(60,230,150,30); tdate.setBounds(260,230,180,30);
         l5.setBounds(60,290,150,30); ttime.setBounds(260,290,180,30);
 
-        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
-        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
+        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
+        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
+
+        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
+        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
+
+        confirm.addActionListener(e -> {
+            String couple = t1.getText().trim(), yearsText = t2.getText().trim(), venueType = t3.getText().trim();
+            String date = tdate.getText().trim(), time = ttime.getText().trim();
+
+            if (couple.isEmpty() || yearsText.isEmpty() || venueType.isEmpty() || date.isEmpty() || time.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            int years = ValidationUtils.parseNonNegativeInt(yearsText);
+            if (years < 0) {
+                JOptionPane.showMessageDialog(this, "Years completed must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalDate eventDate = ValidationUtils.parseDate(date);
+            if (eventDate == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            LocalTime eventTime = ValidationUtils.parseTime(time);
+            if (eventTime == null) {
+                JOptionPane.showMessageDialog(this, ValidationUtils.TIME_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            AnniversaryEvent ev = new AnniversaryEvent();
+            ev.setCoupleNames(couple); ev.setYearsCompleted(years); ev.setVenueType(venueType);
+            ev.setDetails(eventDate,eventTime,venueType);
+
+            submitBooking(ev);
+        });
+
+        back.addActionListener(e -> AppWindow.get().selectEvent(customer));
+    }
+}
+
+
+class PaymentPage extends AppPage {
+private final JTextArea details = new JTextArea();
+private SlotHolds.Hold hold;
+
+
+public PaymentPage() {
+super("Payment", 520, 500);
+
+
+JLabel header = new JLabel("Payment Summary", SwingConstants.CENTER);
+header.setBounds(60,10,400,40);
+header.setFont(header.getFont().deriveFont(18f));
+add(header);
+
+
+details.setEditable(false);
+details.setFont(new Font("Arial", Font.PLAIN, 15));
+
+
+JScrollPane pane = new JScrollPane(details);
+pane.setBounds(60,70,400,260);
+add(pane);
+
+
+JButton payNow = new JButton("Pay Now");
+payNow.setBounds(160,360,180,50);
+add(payNow);
+
+
+JButton cancel = new JButton("Cancel");
+cancel.setBounds(160,420,180,36);
+add(cancel);
+
+
+payNow.addActionListener(e -> {
+BookingService service = BookingService.shared();
+if (hold.isReleased()) {
+// expired or a previous attempt was declined: try to take the slot again
+SlotHolds.Hold again;
+try {
+again = service.hold(hold.customer, hold.event);
+} catch (IllegalStateException notLoaded) {
+JOptionPane.showMessageDialog(this, notLoaded.getMessage(), "Not Ready", JOptionPane.WARNING_MESSAGE);
+return;
+}
+if (again == null) {
+JOptionPane.showMessageDialog(this, "This slot was released and has since been booked by someone else.", "Slot Taken", JOptionPane.WARNING_MESSAGE);
+AppWindow.get().selectEvent(hold.customer);
+return;
+}
+double shown = hold.price;
+// the new hold carries a fresh quote and expiry: show them, and never charge an amount the customer has not seen
+open(again);
+if (again.price != shown && JOptionPane.showConfirmDialog(this,
+"The price for this slot has changed from ₹" + shown + " to ₹" + again.price + ".\nPay ₹" + again.price + "?",
+"Price Changed", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+return;
+}
+}
+SlotHolds.Hold paying = hold;
+
+
+UiTasks.run(() -> service.checkout(paying.ref).payment,
+paid -> {
+Metrics.markStartup("startup.firstBooking");
+JOptionPane.showMessageDialog(
+this,
+"Payment Successful!\nPaid Amount: ₹" + paid.amount +
+"\nTransaction: " + paid.transactionId +
+"\n\n🎉 Booking Confirmed! 🎉" +
+(paying.customer.id < 0 ? "\n\n⚠ JDBC not connected. Booking saved locally and will sync when the database is back." : ""),
+"Success",
+JOptionPane.INFORMATION_MESSAGE
+);
+
+
+AppWindow.get().selectEvent(paying.customer);
+},
+ex -> JOptionPane.showMessageDialog(
+this,
+"Payment Failed: " + ex.getMessage(),
+"Error",
+JOptionPane.ERROR_MESSAGE
+),
+payNow, cancel);
+});
+
+
+cancel.addActionListener(e -> {
+BookingService.shared().releaseHold(hold);
+AppWindow.get().selectEvent(hold.customer);
+});
+}
+
+
+void open(SlotHolds.Hold hold) {
+this.hold = hold;
+Event ev = hold.event;
+
+
+StringBuilder sb = new StringBuilder();
+sb.append("Event Type: ").append(ev.type().displayName).append("\n");
+sb.append("Date: ").append(ValidationUtils.formatDate(ev.getDate())).append("\n");
+sb.append("Time: ").append(ValidationUtils.formatTime(ev.getTime())).append("\n");
+sb.append("Venue: ").append(ev.getVenue()).append("\n\n");
+sb.append("Extra Details:\n").append(ev.extraDetails()).append("\n\n");
+sb.append("Total Amount to Pay: ₹").append(hold.price).append("\n\n");
+sb.append("Slot held until ").append(ValidationUtils.formatTime(LocalTime.ofInstant(Instant.ofEpochMilli(hold.expiresAt), ZoneId.systemDefault()))).append("\n");
+
+
+details.setText(sb.toString());
+details.setCaretPosition(0);
+}
+}
+
+
+class BookingTableModel extends AbstractTableModel {
+    static final int PAGE_SIZE = Integer.getInteger("eventdb.admin.pageSize", 200);
+    private static final String[] COLUMNS = {"ID", "Customer", "Event", "Date", "Time", "Venue", "Price", "Details"};
+    private static final LatencyHistogram PAGE_FETCH = Metrics.histogram("admin.pageFetch");
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "booking-browser"); t.setDaemon(true); return t;
+    });
+
+    private final CustomerDAO dao = new CustomerDAO();
+    private final List<BookingRecord> rows = new ArrayList<>();
+    private final Consumer<Exception> onError;
+    private BookingFilter filter = BookingFilter.ALL;
+    private CompletableFuture<List<BookingRecord>> next;
+    private int generation;
+    private boolean loading, exhausted;
+
+    // All state is touched on the EDT only; pages are fetched on LOADER and handed back with invokeLater.
+    BookingTableModel(Consumer<Exception> onError) { this.onError = onError; }
+
+    void setFilter(BookingFilter f) {
+        generation++;
+        filter = f;
+        rows.clear();
+        next = null;
+        loading = exhausted = false;
+        fireTableDataChanged();
+        loadMore();
+    }
+
+    boolean isLoading() { return loading; }
+    boolean isExhausted() { return exhausted; }
+
+    private void loadMore() {
+        if (loading || exhausted) return;
+        if (next == null) next = fetch(rows.isEmpty() ? 0 : rows.get(rows.size() - 1).id);
+        loading = true;
+        int gen = generation;
+        next.whenComplete((page, ex) -> SwingUtilities.invokeLater(() -> {
+            if (gen != generation) return;
+            loading = false;
+            next = null;
+            if (ex != null) {
+                exhausted = true;
+                fireTableDataChanged();
+                onError.accept(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : new Exception(ex));
+                return;
+            }
+            int first = rows.size();
+            rows.addAll(page);
+            if (page.size() < PAGE_SIZE) exhausted = true;
+            // start on the following page now, so it is usually ready before the operator scrolls to it
+            else next = fetch(page.get(page.size() - 1).id);
+            if (!page.isEmpty()) fireTableRowsInserted(first, rows.size() - 1);
+            else fireTableDataChanged();
+        }));
+    }
+
+    private CompletableFuture<List<BookingRecord>> fetch(int afterId) {
+        BookingFilter f = filter;
+        return CompletableFuture.supplyAsync(() -> {
+            long t0 = System.nanoTime();
+            try {
+                return dao.findBookingsPage(f, afterId, PAGE_SIZE);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                PAGE_FETCH.recordSince(t0);
+            }
+        }, LOADER);
+    }
+
+    @Override public int getRowCount() { return rows.size(); }
+    @Override public int getColumnCount() { return COLUMNS.length; }
+    @Override public String getColumnName(int c) { return COLUMNS[c]; }
+    @Override public Class<?> getColumnClass(int c) { return c == 0 || c == 1 ? Integer.class : c == 6 ? Double.class : String.class; }
+
+    @Override
+    public Object getValueAt(int r, int c) {
+        // rendering rows near the end of what is loaded is the signal to pull the next page
+        if (r >= rows.size() - PAGE_SIZE / 2) loadMore();
+        BookingRecord b = rows.get(r);
+        switch (c) {
+            case 0: return b.id;
+            case 1: return b.customerId;
+            case 2: return b.eventType;
+            case 3: return b.date == null ? "" : ValidationUtils.formatDate(b.date);
+            case 4: return b.time == null ? "" : ValidationUtils.formatTime(b.time);
+            case 5: return b.venue;
+            case 6: return b.price;
+            default: return b.extraDetails;
+        }
+    }
+}
+
+
+class AdminBookingsPage extends AppPage {
+    private final JComboBox<String> type = new JComboBox<>();
+    private final JTextField venue = new JTextField(10);
+    private final PlaceholderTextField from = new PlaceholderTextField("DD/MM/YYYY", 8);
+    private final PlaceholderTextField to = new PlaceholderTextField("DD/MM/YYYY", 8);
+    private final JLabel status = new JLabel(" ");
+    private final BookingTableModel model = new BookingTableModel(this::loadFailed);
+
+    public AdminBookingsPage() {
+        super("Bookings", 900, 560);
+        setLayout(new BorderLayout());
+
+        type.addItem("All events");
+        for (EventType t : EventType.values()) type.addItem(t.displayName);
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton apply = new JButton("Apply");
+        filters.add(new JLabel("Event:")); filters.add(type);
+        filters.add(new JLabel("Venue:")); filters.add(venue);
+        filters.add(new JLabel("From:")); filters.add(from);
+        filters.add(new JLabel("To:")); filters.add(to);
+        filters.add(apply);
+
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(7).setPreferredWidth(240);
+
+        JButton back = new JButton("Back");
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        bottom.add(status, BorderLayout.CENTER); bottom.add(back, BorderLayout.EAST);
+
+        add(filters, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        apply.addActionListener(e -> refresh());
+        back.addActionListener(e -> AppWindow.get().closeAside());
+        model.addTableModelListener(e -> showStatus());
+    }
+
+    void refresh() {
+        String f = from.getText().trim(), t = to.getText().trim();
+        LocalDate fromDate = f.isEmpty() ? null : ValidationUtils.parseDate(f);
+        LocalDate toDate = t.isEmpty() ? null : ValidationUtils.parseDate(t);
+        if ((!f.isEmpty() && fromDate == null) || (!t.isEmpty() && toDate == null)) {
+            JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String v = venue.getText().trim();
+        model.setFilter(new BookingFilter(type.getSelectedIndex() == 0 ? null : (String) type.getSelectedItem(),
+                v.isEmpty() ? null : v, fromDate, toDate));
+        showStatus();
+    }
+
+    private void showStatus() {
+        status.setText(model.getRowCount() + " bookings loaded" + (model.isExhausted() ? "" : model.isLoading() ? ", loading…" : ", scroll for more"));
+    }
+
+    private void loadFailed(Exception e) {
+        status.setText("⚠ Could not load bookings: " + e.getMessage());
+    }
+}
+
+
+class SearchPage extends AppPage {
+    private static final int MAX_RESULTS = 200;
+
+    private final PlaceholderTextField query = new PlaceholderTextField("Name, phone, venue or event details");
+    private final DefaultListModel<String> results = new DefaultListModel<>();
+    private final JLabel status = new JLabel(" ");
+
+    public SearchPage() {
+        super("Find Booking or Customer", 700, 520);
+        setLayout(new BorderLayout());
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        top.add(query, BorderLayout.CENTER);
+
+        JButton back = new JButton("Back");
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        bottom.add(status, BorderLayout.CENTER); bottom.add(back, BorderLayout.EAST);
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(new JList<>(results)), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        // lookups come from memory, so searching on every keystroke stays on the EDT
+        query.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { search(); }
+            public void removeUpdate(DocumentEvent e) { search(); }
+            public void changedUpdate(DocumentEvent e) { search(); }
+        });
+        back.addActionListener(e -> AppWindow.get().closeAside());
+    }
+
+    void focusQuery() {
+        query.requestFocusInWindow();
+        query.selectAll();
+    }
+
+    private void search() {
+        long start = System.nanoTime();
+        List<Object> hits = SearchIndex.get().search(query.getText(), MAX_RESULTS);
+        long micros = (System.nanoTime() - start) / 1000;
+        results.clear();
+        for (Object hit : hits) results.addElement(describe(hit));
+        status.setText(query.getText().isBlank() ? " "
+                : hits.size() + (hits.size() == MAX_RESULTS ? "+" : "") + " matches in " + micros + " µs");
+    }
+
+    private static String describe(Object hit) {
+        if (hit instanceof SearchIndex.CustomerDoc) {
+            SearchIndex.CustomerDoc c = (SearchIndex.CustomerDoc) hit;
+            return "Customer #" + c.id + " · " + c.name + " · " + c.phone;
+        }
+        BookingRecord b = (BookingRecord) hit;
+        return b.eventType + " · " + (b.date == null ? "" : ValidationUtils.formatDate(b.date)) + " "
+                + (b.time == null ? "" : ValidationUtils.formatTime(b.time)) + " · " + b.venue + " · " + b.extraDetails
+                + (b.customerId > 0 ? " · customer #" + b.customerId : "");
+    }
+}
+
+
+class ReportPage extends AppPage {
+    private final PlaceholderTextField from = new PlaceholderTextField("DD/MM/YYYY", 8);
+    private final PlaceholderTextField to = new PlaceholderTextField("DD/MM/YYYY", 8);
+    private final JTextArea output = new JTextArea();
+    private final JLabel status = new JLabel(" ");
+
+    public ReportPage() {
+        super("Revenue Report", 720, 560);
+        setLayout(new BorderLayout());
+
+        JButton run = new JButton("Run");
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filters.add(new JLabel("From:")); filters.add(from);
+        filters.add(new JLabel("To:")); filters.add(to);
+        filters.add(run);
+
+        output.setEditable(false);
+        output.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+
+        JButton back = new JButton("Back");
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        bottom.add(status, BorderLayout.CENTER); bottom.add(back, BorderLayout.EAST);
+
+        add(filters, BorderLayout.NORTH);
+        add(new JScrollPane(output), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        run.addActionListener(e -> refresh());
+        back.addActionListener(e -> AppWindow.get().closeAside());
+    }
+
+    void refresh() {
+        String f = from.getText().trim(), t = to.getText().trim();
+        LocalDate fromDate = f.isEmpty() ? null : ValidationUtils.parseDate(f);
+        LocalDate toDate = t.isEmpty() ? null : ValidationUtils.parseDate(t);
+        if ((!f.isEmpty() && fromDate == null) || (!t.isEmpty() && toDate == null)) {
+            JOptionPane.showMessageDialog(this, ValidationUtils.DATE_MSG, "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        long start = System.nanoTime();
+        UiTasks.run(() -> BookingAnalytics.get().report(fromDate, toDate),
+            report -> {
+                output.setText(report.format());
+                output.setCaretPosition(0);
+                status.setText(report.count + " bookings in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            },
+            ex -> status.setText("⚠ Report failed: " + ex.getMessage()));
+    }
+}
+
+
+class CsvReader implements Closeable {
+    private final Reader in;
+    private final char[] buf = new char[64 * 1024];
+    private int pos, len;
+    private long line = 1, recordLine;
+
+    CsvReader(Reader in) { this.in = in; }
+
+    // Next record as RFC 4180 fields (quoted fields may hold commas, "" and line breaks), or null at end of input.
+    List<String> next() throws IOException {
+        int c = read();
+        if (c < 0) return null;
+        recordLine = line;
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                if (c == '"') {
+                    if (peek() == '"') { read(); field.append('"'); }
+                    else quoted = false;
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c < 0) {
+                if (c == '\r' && peek() == '\n') read();
+                if (c >= 0) line++;
+                row.add(field.toString());
+                return row;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    // Line the last record returned by next() started on.
+    long lineNumber() { return recordLine; }
+
+    static String quote(String field) {
+        if (field == null) return "";
+        boolean plain = true;
+        for (int i = 0; i < field.length() && plain; i++) {
+            char c = field.charAt(i);
+            plain = c != ',' && c != '"' && c != '\n' && c != '\r';
+        }
+        return plain ? field : '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private int read() throws IOException {
+        if (pos == len && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == len && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) { len = 0; return false; }
+        return true;
+    }
+
+    @Override public void close() throws IOException { in.close(); }
+}
+
+
+class BulkImporter {
+    private static final String[] CORE = {"name", "phone", "address", "eventtype", "date", "time", "venue"};
+    private static final LatencyHistogram CHUNK_WRITES = Metrics.histogram("import.chunkWrite");
+
+    private static final class Row {
+        final long line;
+        final List<String> fields;
+        String error, phone;
+        Event event;
+        double price;
+        int customerId;
+        Row(long line, List<String> fields) { this.line = line; this.fields = fields; }
+    }
+
+    private final int[] core = new int[CORE.length];
+    private final Map<String, Integer> extras = new HashMap<>(); // requiredExtras key -> column
+    private final Map<String, Integer> knownCustomers = new HashMap<>();
+    private final BufferedWriter rejects;
+    private long read, imported, rejected;
+
+    BulkImporter(List<String> header, BufferedWriter rejects) throws IOException {
+        this.rejects = rejects;
+        Arrays.fill(core, -1);
+        Map<String, String> extraKeys = new HashMap<>();
+        for (EventType t : EventType.values()) for (String key : t.requiredExtras) extraKeys.put(normalize(key), key);
+        for (int i = 0; i < header.size(); i++) {
+            String h = normalize(header.get(i));
+            for (int c = 0; c < CORE.length; c++) if (CORE[c].equals(h)) core[c] = i;
+            if (extraKeys.containsKey(h)) extras.put(extraKeys.get(h), i);
+        }
+        for (int c = 0; c < CORE.length; c++)
+            if (core[c] < 0) throw new IOException("Missing column: " + CORE[c]);
+        rejects.write("line,error");
+        for (String h : header) rejects.write("," + CsvReader.quote(h));
+        rejects.newLine();
+    }
+
+    // --import <file.csv> [rejects.csv]
+    public static void run(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java EventManagementApp --import <file.csv> [rejects.csv]");
+            return;
+        }
+        Path in = Paths.get(args[1]);
+        Path rejectsFile = Paths.get(args.length > 2 ? args[2] : args[1] + ".rejects.csv");
+        int chunkSize = Integer.getInteger("import.chunkSize", 1_000);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (DBConnection.shardCount() > 1) {
+            // chunks commit in one transaction on one connection; import into one shard and let --rebalance spread it
+            System.out.println("⚠ --import writes to a single database. Import with -Deventdb.shards=<first shard url>, then run --rebalance.");
+            return;
+        }
+        try (Connection con = DBConnection.getConnection()) {
+            if (con == null) {
+                System.out.println("⚠ JDBC not connected. Nothing imported.");
+                return;
+            }
+        }
+        BookingSchema.migrate();
+
+        ExecutorService validators = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "import-validate"); t.setDaemon(true); return t;
+        });
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(in, StandardCharsets.UTF_8));
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+            List<String> header = csv.next();
+            if (header == null) throw new IOException("Empty file: " + in);
+            BulkImporter importer = new BulkImporter(header, rejects);
+
+            // chunks are validated and priced in parallel but written in file order; the window bounds memory
+            ArrayDeque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+            long start = System.nanoTime(), lastReport = start;
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            for (List<String> fields = csv.next(); ; fields = csv.next()) {
+                if (fields != null) {
+                    if (fields.size() == 1 && fields.get(0).isEmpty()) continue;
+                    chunk.add(new Row(csv.lineNumber(), fields));
+                    importer.read++;
+                }
+                if (chunk.size() == chunkSize || (fields == null && !chunk.isEmpty())) {
+                    List<Row> rows = chunk;
+                    inFlight.add(validators.submit(() -> importer.prepare(rows)));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+                while (!inFlight.isEmpty() && (inFlight.size() > threads * 2 || fields == null))
+                    importer.write(inFlight.poll().get());
+                if (System.nanoTime() - lastReport > TimeUnit.SECONDS.toNanos(2)) {
+                    lastReport = System.nanoTime();
+                    importer.printProgress(start);
+                }
+                if (fields == null) break;
+            }
+            importer.printProgress(start);
+            System.out.println("Rejected rows written to " + rejectsFile);
+        } finally {
+            validators.shutdown();
+        }
+    }
+
+    private void printProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("read=%d imported=%d rejected=%d elapsed=%.1fs throughput=%.0f rows/s%n",
+                read, imported, rejected, seconds, read / Math.max(seconds, 1e-9));
+    }
 
-        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
-        add(l4); add(tdate); add(l5); add(ttime);
-        add(confirm); add(back);
+    // Runs on a validator thread: the same checks the forms apply, then the Event subclass prices the row.
+    private List<Row> prepare(List<Row> rows) {
+        BookingRequest[] requests = new BookingRequest[rows.size()];
+        for (int i = 0; i < requests.length; i++) requests[i] = request(rows.get(i).fields);
+        ValidationReport report = ValidationUtils.validate(requests);
+        for (ValidationReport.FieldError e : report.errors()) {
+            Row row = rows.get(e.index);
+            row.error = row.error == null ? e.field + ": " + e.message : row.error + "; " + e.field + ": " + e.message;
+        }
+        for (int i = 0; i < requests.length; i++) {
+            Row row = rows.get(i);
+            if (row.error != null) continue;
+            try {
+                row.event = EventType.fromName(requests[i].eventType).create(requests[i]);
+                row.price = row.event.calculatePrice();
+                row.phone = CustomerCache.normalizePhone(requests[i].phone);
+            } catch (RuntimeException e) {
+                row.error = String.valueOf(e.getMessage());
+            }
+        }
+        return rows;
+    }
 
-        confirm.addActionListener(e -> {
-            String couple = t1.getText().trim(); String venuePref = t2.getText().trim();
-            String gText = t3.getText().trim();
-            String date = tdate.getText().trim(); String time = ttime.getText().trim();
+    private BookingRequest request(List<String> f) {
+        BookingRequest r = new BookingRequest(field(f, core[0]), field(f, core[1]), field(f, core[2]), field(f, core[3]),
+                field(f, core[4]), field(f, core[5]), field(f, core[6]));
+        EventType type = EventType.fromName(r.eventType);
+        if (type != null) for (String key : type.requiredExtras) {
+            Integer col = extras.get(key);
+            String v = col == null ? null : field(f, col);
+            if (v != null) r.extra(key, v);
+        }
+        return r;
+    }
 
-            if (couple.isEmpty() || venuePref.isEmpty() || gText.isEmpty() || date.isEmpty() || time.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
+    private void write(List<Row> rows) throws IOException {
+        List<Row> valid = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (row.error != null) reject(row, row.error);
+            else valid.add(row);
+        }
+        if (valid.isEmpty()) return;
+        long start = System.nanoTime();
+        Map<String, Integer> created = new HashMap<>();
+        try (Connection con = DBConnection.getConnection()) {
+            if (con == null) throw new SQLException("JDBC Not Connected");
+            con.setAutoCommit(false);
+            try {
+                insert(con, valid, created);
+                con.commit();
+                remember(created);
+                imported += valid.size();
                 return;
+            } catch (SQLException chunkFailure) {
+                con.rollback();
+                created.clear();
+                for (Row row : valid) row.customerId = 0;
+            } finally {
+                con.setAutoCommit(true);
+                CHUNK_WRITES.recordSince(start);
             }
-            int guests;
-            try { guests = Integer.parseInt(gText); if (guests < 0) throw new NumberFormatException(); }
-            catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(this, "Guest count must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+            // one bad row must not sink the chunk: retry row by row to isolate it
+            for (Row row : valid) {
+                try {
+                    insert(con, Arrays.asList(row), created);
+                    remember(created);
+                    imported++;
+                } catch (SQLException rowFailure) {
+                    reject(row, rowFailure.getMessage());
+                }
             }
-            if (!ValidationUtils.isValidDate(date)) {
-                JOptionPane.showMessageDialog(this, "Enter valid date in DD/MM/YYYY format.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+        } catch (SQLException e) {
+            for (Row row : valid) reject(row, e.getMessage());
+        }
+    }
+
+    private void insert(Connection con, List<Row> rows, Map<String, Integer> created) throws SQLException {
+        resolveCustomers(con, rows, created);
+        try (PreparedStatement ps = con.prepareStatement(CustomerDAO.INSERT_BOOKING_SQL)) {
+            for (Row row : rows) {
+                Event ev = row.event;
+                CustomerDAO.bindBooking(ps, row.customerId, ev.type().displayName, ev.getDate(), ev.getTime(), row.price, ev.getVenue(), ev.extraDetails());
+                ps.addBatch();
             }
-            if (!ValidationUtils.isValidTime(time)) {
-                JOptionPane.showMessageDialog(this, "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+            ps.executeBatch();
+        }
+    }
+
+    // Same find-then-upsert as CustomerDAO.saveCustomer, but one round trip per step for the whole chunk.
+    private void resolveCustomers(Connection con, List<Row> rows, Map<String, Integer> created) throws SQLException {
+        Map<String, Row> unknown = new LinkedHashMap<>();
+        for (Row row : rows) {
+            Integer id = knownCustomers.get(row.phone);
+            if (id == null) id = created.get(row.phone);
+            if (id != null) row.customerId = id;
+            else unknown.putIfAbsent(row.phone, row);
+        }
+        if (unknown.isEmpty()) return;
+        findCustomers(con, unknown.keySet(), created);
+        List<Row> missing = new ArrayList<>();
+        for (Row row : unknown.values()) if (!created.containsKey(row.phone)) missing.add(row);
+        if (!missing.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement(CustomerDAO.UPSERT_CUSTOMER_SQL)) {
+                for (Row row : missing) {
+                    ps.setString(1, field(row.fields, core[0]).trim());
+                    ps.setString(2, row.phone);
+                    ps.setString(3, field(row.fields, core[2]).trim());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
             }
+            List<String> phones = new ArrayList<>();
+            for (Row row : missing) phones.add(row.phone);
+            findCustomers(con, phones, created);
+        }
+        for (Row row : rows) {
+            if (row.customerId > 0) continue;
+            Integer id = created.get(row.phone);
+            if (id == null) throw new SQLException("No customer id for phone " + row.phone);
+            row.customerId = id;
+        }
+    }
 
-            EngagementEvent ev = new EngagementEvent();
-            ev.setCoupleNames(couple); ev.setVenuePreference(venuePref); ev.setGuestCount(guests);
-            ev.setDetails(date,time,venuePref);
+    private static void findCustomers(Connection con, Collection<String> phones, Map<String, Integer> into) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT phone, customer_id FROM customers WHERE phone IN (");
+        for (int i = 0; i < phones.size(); i++) sql.append(i == 0 ? "?" : ",?");
+        sql.append(')');
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (String phone : phones) ps.setString(i++, phone);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) into.putIfAbsent(rs.getString(1), rs.getInt(2));
+            }
+        }
+    }
+
+    // Committed ids only; a partner calendar with more customers than this just goes back to the database.
+    private void remember(Map<String, Integer> created) {
+        if (knownCustomers.size() > 200_000) knownCustomers.clear();
+        knownCustomers.putAll(created);
+        created.clear();
+    }
 
-            try { if(custId!=-1) new CustomerDAO().saveBooking(custId,"Engagement Ceremony",ev.getDate(),ev.getTime(),ev.calculatePrice(),ev.getVenue(),ev.extraDetails()); }
-            catch(Exception ex) { JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving booking. Booking not saved in DB.","Warning",JOptionPane.WARNING_MESSAGE); }
+    private void reject(Row row, String error) throws IOException {
+        rejected++;
+        rejects.write(row.line + "," + CsvReader.quote(error));
+        for (String f : row.fields) rejects.write("," + CsvReader.quote(f));
+        rejects.newLine();
+    }
 
-            new PaymentPage(custId,"Engagement Ceremony",ev,prevPage).setVisible(true);
-            dispose();
-        });
+    private static String field(List<String> fields, int i) {
+        return i < fields.size() ? fields.get(i) : null;
+    }
 
-        back.addActionListener(e -> { prevPage.setVisible(true); dispose(); });
+    private static String normalize(String header) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : header.toCharArray()) if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        return sb.toString();
     }
 }
 
 
-class BabyShowerForm extends EventForm {
-    public BabyShowerForm(int custId, EventSelection prevPage){
-        super(custId,prevPage); setTitle("Baby Shower");
+class BookingExporter {
+    private static final String SQL = "SELECT b.booking_id, b.customer_id, c.name, c.phone, c.address, b.event_type, "
+            + "b.event_date, b.event_time, b.price, b.venue, b.extra_details "
+            + "FROM bookings b LEFT JOIN customers c ON c.customer_id = b.customer_id "
+            + "WHERE b.booking_id > ? ORDER BY b.booking_id";
+    private static final String[] COLUMNS = {"booking_id", "customer_id", "name", "phone", "address", "event_type",
+            "event_date", "event_time", "price", "venue", "extra_details"};
 
-        JLabel header = new JLabel("Baby Shower Details",SwingConstants.CENTER);
-        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+    // --export <csv|jsonl> <file[.gz]> [sinceBookingId]
+    public static void run(String[] args) throws Exception {
+        if (args.length < 3 || !(args[1].equals("csv") || args[1].equals("jsonl"))) {
+            System.out.println("Usage: java [-Dexport.watermark=<file>] EventManagementApp --export <csv|jsonl> <file[.gz]> [sinceBookingId]");
+            return;
+        }
+        if (DBConnection.shardCount() > 1) {
+            // the export joins bookings to customers in SQL, which cannot reach a customer on another shard
+            System.out.println("⚠ --export reads a single database and is not available with -Deventdb.shards.");
+            return;
+        }
+        boolean json = args[1].equals("jsonl");
+        Path out = Paths.get(args[2]);
+        String watermarkProp = System.getProperty("export.watermark");
+        Path watermark = watermarkProp == null ? null : Paths.get(watermarkProp);
+        long since = args.length > 3 ? Long.parseLong(args[3])
+                : watermark != null && Files.exists(watermark) ? Long.parseLong(new String(Files.readAllBytes(watermark), StandardCharsets.UTF_8).trim())
+                : 0;
+        // MySQL streams row by row only at Integer.MIN_VALUE; other drivers take it as a plain hint
+        int fetchSize = Integer.getInteger("export.fetchSize", Integer.MIN_VALUE);
+
+        Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+        long rows = 0, last = since, start = System.nanoTime();
+        boolean moved = false;
+        try (Connection con = DBConnection.getConnection()) {
+            if (con == null) throw new Exception("JDBC Not Connected");
+            try (PreparedStatement ps = con.prepareStatement(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 ChannelWriter w = new ChannelWriter(tmp, out.getFileName().toString().endsWith(".gz"))) {
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, since);
+                StringBuilder line = new StringBuilder(512);
+                String[] values = new String[COLUMNS.length];
+                if (!json) {
+                    for (int i = 0; i < COLUMNS.length; i++) line.append(i == 0 ? "" : ",").append(COLUMNS[i]);
+                    w.write(line.append('\n'));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        read(rs, values);
+                        line.setLength(0);
+                        if (json) jsonLine(line, values);
+                        else csvLine(line, values);
+                        w.write(line);
+                        last = rs.getLong(1);
+                        rows++;
+                    }
+                }
+            }
+            // the writer is flushed and closed above; the file only appears once complete, so a failed night never
+            // leaves a truncated dump behind
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) Files.deleteIfExists(tmp);
+        }
+        if (watermark != null) Files.write(watermark, String.valueOf(last).getBytes(StandardCharsets.UTF_8));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("rows=%d bytes=%d elapsed=%.2fs throughput=%.0f rows/s lastBookingId=%d%n",
+                rows, Files.size(out), seconds, rows / Math.max(seconds, 1e-9), last);
+    }
 
-        JLabel l1=new JLabel("Mother's Name:"), l2=new JLabel("Theme:"), l3=new JLabel("Guest Count:");
-        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+    private static void read(ResultSet rs, String[] v) throws SQLException {
+        v[0] = rs.getString(1);
+        v[1] = rs.getString(2);
+        v[2] = rs.getString(3);
+        v[3] = rs.getString(4);
+        v[4] = rs.getString(5);
+        v[5] = rs.getString(6);
+        java.sql.Date d = rs.getDate(7);
+        v[6] = d == null ? null : d.toLocalDate().toString();
+        Time t = rs.getTime(8);
+        v[7] = t == null ? null : t.toLocalTime().toString();
+        java.math.BigDecimal price = rs.getBigDecimal(9);
+        v[8] = price == null ? null : price.toPlainString();
+        v[9] = rs.getString(10);
+        v[10] = rs.getString(11);
+    }
 
-        JTextField t1=new JTextField(), t2=new JTextField(), t3=new JTextField();
-        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
-        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
+    private static void csvLine(StringBuilder sb, String[] v) {
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(CsvReader.quote(v[i]));
+        }
+        sb.append('\n');
+    }
 
-        l1.setBounds(60,70,150,30); t1.setBounds(260,70,180,30);
-        l2.setBounds(60,120,150,30); t2.setBounds(260,120,180,30);
-        l3.setBounds(60,170,150,30); t3.setBounds(260,170,180,30);
-        l4.setBounds(60,230,150,30); tdate.setBounds(260,230,180,30);
-        l5.setBounds(60,290,150,30); ttime.setBounds(260,290,180,30);
+    // ids and price are numbers, everything else a string; SQL NULL becomes null
+    private static void jsonLine(StringBuilder sb, String[] v) {
+        sb.append('{');
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(COLUMNS[i]).append("\":");
+            boolean number = i == 0 || i == 1 || i == 8;
+            if (v[i] == null) sb.append("null");
+            else if (number) sb.append(v[i]);
+            else jsonString(sb, v[i]);
+        }
+        sb.append("}\n");
+    }
 
-        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
-        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
+    static void jsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
 
-        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
-        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
+    // UTF-8 encodes straight into one reused direct buffer and drains it to the file (or gzip) channel.
+    static final class ChannelWriter implements Closeable {
+        private final FileChannel file;
+        private final WritableByteChannel out;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(256 * 1024);
 
-        confirm.addActionListener(e -> {
-            String mother = t1.getText().trim(), theme = t2.getText().trim(), gText = t3.getText().trim();
-            String date = tdate.getText().trim(), time = ttime.getText().trim();
+        ChannelWriter(Path path, boolean gzip) throws IOException {
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            out = gzip ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), 64 * 1024)) : file;
+        }
 
-            if (mother.isEmpty() || theme.isEmpty() || gText.isEmpty() || date.isEmpty() || time.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            int guests;
-            try { guests = Integer.parseInt(gText); if (guests < 0) throw new NumberFormatException(); }
-            catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(this, "Guest count must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult r = encoder.encode(chars, buf, false);
+                if (r.isOverflow()) drain();
+                else if (r.isUnderflow()) return;
+                else r.throwException();
             }
-            if (!ValidationUtils.isValidDate(date)) {
-                JOptionPane.showMessageDialog(this, "Enter valid date in DD/MM/YYYY format.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!ValidationUtils.isValidTime(time)) {
-                JOptionPane.showMessageDialog(this, "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // end of input lets the encoder emit anything it still holds before the last drain
+                CharBuffer empty = CharBuffer.allocate(0);
+                CoderResult r;
+                while ((r = encoder.encode(empty, buf, true)).isOverflow()) drain();
+                if (r.isError()) r.throwException();
+                while ((r = encoder.flush(buf)).isOverflow()) drain();
+                drain();
+            } finally {
+                out.close();
+                file.close();
             }
+        }
+    }
+}
 
-            BabyShowerEvent ev = new BabyShowerEvent();
-            ev.setMotherName(mother); ev.setTheme(theme); ev.setGuestCount(guests);
-            ev.setDetails(date,time,"");
 
-            try { if(custId!=-1) new CustomerDAO().saveBooking(custId,"Baby Shower",ev.getDate(),ev.getTime(),ev.calculatePrice(),ev.getVenue(),ev.extraDetails()); }
-            catch(Exception ex) { JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving booking. Booking not saved in DB.","Warning",JOptionPane.WARNING_MESSAGE); }
+class ShardRebalancer {
+    private static final int BATCH = Integer.getInteger("rebalance.batchSize", 1_000);
 
-            new PaymentPage(custId,"Baby Shower",ev,prevPage).setVisible(true);
-            dispose();
-        });
+    // --rebalance [--dry-run]: moves every customer and booking to the shard the current -Deventdb.shards ring assigns
+    // it. Rows are copied (ids kept) and then deleted from the source, so a re-run after a crash finishes the move.
+    // Run it with the new shard list while the application is stopped.
+    public static void run(String[] args) throws Exception {
+        boolean dryRun = args.length > 1 && args[1].equals("--dry-run");
+        if (DBConnection.shardCount() == 1) {
+            System.out.println("Only one database configured. Set -Deventdb.shards to the full list, new shards included.");
+            return;
+        }
+        BookingSchema.migrate();
+        // migrate() only warns; moving rows between shards whose counters may still collide is not safe
+        BookingSchema.alignIdCounters();
+        long start = System.nanoTime();
+        for (int s = 0; s < DBConnection.shardCount(); s++) {
+            long[] customers = move(s, "customers", "customer_id", "phone", true, dryRun);
+            long[] bookings = move(s, "bookings", "booking_id", "venue", false, dryRun);
+            System.out.printf("%s: %s %d customers and %d bookings; kept %d customers and %d bookings the target refused%n",
+                    DBConnection.shardName(s), dryRun ? "would move" : "moved", customers[0], bookings[0], customers[1], bookings[1]);
+        }
+        System.out.printf("Done in %.1fs%n", (System.nanoTime() - start) / 1e9);
+    }
 
-        back.addActionListener(e -> { prevPage.setVisible(true); dispose(); });
+    // Returns {moved, kept because the target refused the row}.
+    private static long[] move(int source, String table, String pk, String routeColumn, boolean byPhone, boolean dryRun) throws Exception {
+        long moved = 0, kept = 0, after = 0;
+        try (Connection src = DBConnection.getConnection(source)) {
+            if (src == null) throw new Exception("JDBC Not Connected");
+            while (true) {
+                Map<Integer, List<Object[]>> byTarget = new TreeMap<>();
+                String[] columns;
+                int read = 0;
+                try (PreparedStatement ps = src.prepareStatement("SELECT * FROM " + table + " WHERE " + pk + " > ? ORDER BY " + pk + " LIMIT ?")) {
+                    ps.setLong(1, after);
+                    ps.setInt(2, BATCH);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        ResultSetMetaData md = rs.getMetaData();
+                        columns = new String[md.getColumnCount()];
+                        for (int i = 0; i < columns.length; i++) columns[i] = md.getColumnName(i + 1);
+                        while (rs.next()) {
+                            read++;
+                            after = rs.getLong(pk);
+                            String key = rs.getString(routeColumn);
+                            int target = byPhone ? DBConnection.customerShard(key) : DBConnection.venueShard(key);
+                            if (target == source) continue;
+                            Object[] row = new Object[columns.length];
+                            for (int i = 0; i < row.length; i++) row[i] = rs.getObject(i + 1);
+                            byTarget.computeIfAbsent(target, k -> new ArrayList<>()).add(row);
+                        }
+                    }
+                }
+                if (read == 0) break;
+                for (Map.Entry<Integer, List<Object[]>> e : byTarget.entrySet()) {
+                    List<Object[]> rows = e.getValue();
+                    if (dryRun) {
+                        moved += rows.size();
+                        continue;
+                    }
+                    List<Long> copied = copy(e.getKey(), table, pk, columns, rows);
+                    delete(src, table, pk, copied);
+                    moved += copied.size();
+                    kept += rows.size() - copied.size();
+                }
+            }
+        }
+        return new long[]{moved, kept};
     }
-}
 
+    // Returns the ids safe to delete from the source: rows this call inserted, plus rows an interrupted earlier run
+    // already copied (same id, identical columns). A row refused for any other reason - another row holding the id,
+    // or a unique key such as uk_customers_phone or uk_bookings_idempotency_key - stays on the source.
+    private static List<Long> copy(int target, String table, String pk, String[] columns, List<Object[]> rows) throws Exception {
+        String cols = String.join(", ", columns);
+        String insert = "INSERT INTO " + table + " (" + cols + ") VALUES (" + placeholders(columns.length) + ")";
+        int pkIndex = Arrays.asList(columns).indexOf(pk);
+        List<Long> copied = new ArrayList<>(rows.size());
+        try (Connection dst = DBConnection.getConnection(target)) {
+            if (dst == null) throw new Exception("JDBC Not Connected");
+            try (PreparedStatement ins = dst.prepareStatement(insert);
+                 PreparedStatement existing = dst.prepareStatement("SELECT " + cols + " FROM " + table + " WHERE " + pk + " = ?")) {
+                for (Object[] row : rows) {
+                    long id = ((Number) row[pkIndex]).longValue();
+                    for (int i = 0; i < row.length; i++) ins.setObject(i + 1, row[i]);
+                    try {
+                        ins.executeUpdate();
+                        copied.add(id);
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        if (sameRow(existing, id, row)) copied.add(id);
+                    }
+                }
+            }
+        }
+        return copied;
+    }
 
-class AnniversaryForm extends EventForm {
-    public AnniversaryForm(int custId, EventSelection prevPage){
-        super(custId,prevPage); setTitle("Anniversary Celebration");
+    private static boolean sameRow(PreparedStatement existing, long id, Object[] row) throws SQLException {
+        existing.setLong(1, id);
+        try (ResultSet rs = existing.executeQuery()) {
+            if (!rs.next()) return false;
+            Object[] found = new Object[row.length];
+            for (int i = 0; i < found.length; i++) found[i] = rs.getObject(i + 1);
+            return Arrays.equals(found, row);
+        }
+    }
 
-        JLabel header = new JLabel("Anniversary Celebration Details",SwingConstants.CENTER);
-        header.setBounds(60,10,440,30); header.setFont(header.getFont().deriveFont(16f));
+    private static void delete(Connection con, String table, String pk, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + table + " WHERE " + pk + " IN (" + placeholders(ids.size()) + ")")) {
+            for (int i = 0; i < ids.size(); i++) ps.setLong(i + 1, ids.get(i));
+            ps.executeUpdate();
+        }
+    }
 
-        JLabel l1=new JLabel("Couple Names:"), l2=new JLabel("Years Completed:"), l3=new JLabel("Venue Type:");
-        JLabel l4=new JLabel("Date:"), l5=new JLabel("Time:");
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 2);
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ",?");
+        return sb.toString();
+    }
+}
 
-        JTextField t1=new JTextField(), t2=new JTextField(), t3=new JTextField();
-        PlaceholderTextField tdate = new PlaceholderTextField("DD/MM/YYYY");
-        PlaceholderTextField ttime = new PlaceholderTextField("HH:MM AM/PM");
 
-        l1.setBounds(60,70,150,30); t1.setBounds(260,70,180,30);
-        l2.setBounds(60,120,150,30); t2.setBounds(260,120,180,30);
-        l3.setBounds(60,170,150,30); t3.setBounds(260,170,180,30);
-        l4.setBounds(60,230,150,30); tdate.setBounds(260,230,180,30);
-        l5.setBounds(60,290,150,30); ttime.setBounds(260,290,180,30);
+class BookingHttpServer {
+    private static final LatencyHistogram REQUESTS = Metrics.histogram("http.request");
+    private static final LongAdder SHED = Metrics.counter("http.shed"), ERRORS = Metrics.counter("http.errors");
+    private static final int MAX_BODY = 64 * 1024;
 
-        JButton confirm=new JButton("Confirm"), back=new JButton("Back");
-        confirm.setBounds(140,380,120,50); back.setBounds(310,380,120,50);
+    interface Endpoint { Response handle(Map<String, String> params) throws Exception; }
 
-        add(header); add(l1); add(t1); add(l2); add(t2); add(l3); add(t3);
-        add(l4); add(tdate); add(l5); add(ttime); add(confirm); add(back);
+    static final class Response {
+        final int status;
+        final String json;
+        Response(int status, String json) { this.status = status; this.json = json; }
+    }
 
-        confirm.addActionListener(e -> {
-            String couple = t1.getText().trim(), yearsText = t2.getText().trim(), venueType = t3.getText().trim();
-            String date = tdate.getText().trim(), time = ttime.getText().trim();
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final BookingService service = BookingService.shared();
+    // never holds more threads than there are permits, so it stays bounded without a queue to grow
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "http-worker"); t.setDaemon(true); return t;
+    });
+
+    BookingHttpServer(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
 
-            if (couple.isEmpty() || yearsText.isEmpty() || venueType.isEmpty() || date.isEmpty() || time.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please fill all fields.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            int years;
-            try { years = Integer.parseInt(yearsText); if (years < 0) throw new NumberFormatException(); }
-            catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(this, "Years completed must be a non-negative integer.", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!ValidationUtils.isValidDate(date)) {
-                JOptionPane.showMessageDialog(this, "Enter valid date in DD/MM/YYYY format.", "Validation", JOptionPane.WARNING_MESSAGE);
+    // --server [port]
+    public static void run(String[] args) throws Exception {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("server.port", 8080);
+        int maxInFlight = Integer.getInteger("server.maxInFlight", 256);
+        BookingJournal.get().start();
+        DBConnection.warmUp();
+        BookingSchema.migrate();
+        if (!AvailabilityIndex.get().load()) System.err.println("Holds are refused with 503 until availability loads; retrying in the background");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("server.backlog", 1024));
+        new BookingHttpServer(maxInFlight).register(server);
+        // handlers run on the dispatcher thread only long enough to admit or shed; admitted work moves to workers
+        server.setExecutor(null);
+        server.start();
+        System.out.println("Booking API listening on :" + port + " (max in flight " + maxInFlight + ")");
+    }
+
+    void register(HttpServer server) {
+        server.createContext("/quote", admit(false, this::quote));
+        server.createContext("/bookings", admit(true, this::book));
+        server.createContext("/payments", admit(true, this::pay));
+        server.createContext("/health", admit(false, p -> new Response(200,
+                "{\"inFlight\":" + (maxInFlight - inFlight.availablePermits()) + ",\"shed\":" + SHED.sum() + "}")));
+    }
+
+    private HttpHandler admit(boolean postOnly, Endpoint endpoint) {
+        return ex -> {
+            if (!inFlight.tryAcquire()) {
+                SHED.increment();
+                ex.getResponseHeaders().set("Retry-After", "1");
+                send(ex, new Response(503, "{\"error\":\"Server busy, retry shortly\"}"));
                 return;
             }
-            if (!ValidationUtils.isValidTime(time)) {
-                JOptionPane.showMessageDialog(this, "Enter valid time in HH:MM AM/PM format (e.g. 07:30 PM).", "Validation", JOptionPane.WARNING_MESSAGE);
-                return;
+            long start = System.nanoTime();
+            try {
+                workers.execute(() -> {
+                    try {
+                        if (postOnly && !ex.getRequestMethod().equals("POST")) send(ex, new Response(405, "{\"error\":\"Use POST\"}"));
+                        else send(ex, endpoint.handle(params(ex)));
+                    } catch (Exception e) {
+                        ERRORS.increment();
+                        try { send(ex, error(500, e.getMessage())); } catch (IOException ignored) {}
+                    } finally {
+                        inFlight.release();
+                        REQUESTS.recordSince(start);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                SHED.increment();
+                send(ex, new Response(503, "{\"error\":\"Server busy, retry shortly\"}"));
             }
+        };
+    }
 
-            AnniversaryEvent ev = new AnniversaryEvent();
-            ev.setCoupleNames(couple); ev.setYearsCompleted(years); ev.setVenueType(venueType);
-            ev.setDetails(date,time,venueType);
-
-            try { if(custId!=-1) new CustomerDAO().saveBooking(custId,"Anniversary Celebration",ev.getDate(),ev.getTime(),ev.calculatePrice(),ev.getVenue(),ev.extraDetails()); }
-            catch(Exception ex) { JOptionPane.showMessageDialog(this,"⚠ JDBC not connected or error saving booking. Booking not saved in DB.","Warning",JOptionPane.WARNING_MESSAGE); }
+    private Response quote(Map<String, String> p) {
+        BookingRequest r = request(p);
+        // a quote needs the event, not the customer
+        List<ValidationReport.FieldError> errors = new ArrayList<>();
+        for (ValidationReport.FieldError e : ValidationUtils.validate(r).errors())
+            if (!e.field.equals("name") && !e.field.equals("phone") && !e.field.equals("address")) errors.add(e);
+        if (!errors.isEmpty()) return invalid(errors);
+        Event ev = EventType.fromName(r.eventType).create(r);
+        StringBuilder sb = new StringBuilder("{\"eventType\":");
+        BookingExporter.jsonString(sb, ev.type().displayName);
+        return new Response(200, sb.append(",\"price\":").append(ev.calculatePrice()).append('}').toString());
+    }
 
-            new PaymentPage(custId,"Anniversary Celebration",ev,prevPage).setVisible(true);
-            dispose();
-        });
+    private Response book(Map<String, String> p) throws Exception {
+        BookingRequest r = request(p);
+        ValidationReport report = ValidationUtils.validate(r);
+        if (!report.isValid()) return invalid(report.errors());
+        Event ev = EventType.fromName(r.eventType).create(r);
+        BookingService.Customer c = new BookingService.Customer(r.name.trim(), r.phone.trim(), r.address.trim());
+        SlotHolds.Hold hold;
+        try {
+            hold = service.hold(c, ev);
+        } catch (IllegalStateException notLoaded) {
+            return error(503, notLoaded.getMessage());
+        }
+        if (hold == null) {
+            LocalDateTime next = service.nextFreeSlot(ev);
+            StringBuilder sb = new StringBuilder("{\"error\":\"This venue is already booked at that time.\",\"nextFreeSlot\":");
+            BookingExporter.jsonString(sb, ValidationUtils.formatDate(next.toLocalDate()) + " " + ValidationUtils.formatTime(next.toLocalTime()));
+            return new Response(409, sb.append('}').toString());
+        }
+        StringBuilder sb = new StringBuilder("{\"bookingRef\":");
+        BookingExporter.jsonString(sb, hold.ref);
+        sb.append(",\"price\":").append(hold.price)
+          .append(",\"holdExpiresInSeconds\":").append(Math.max(0, (hold.expiresAt - System.currentTimeMillis()) / 1000)).append('}');
+        return new Response(201, sb.toString());
+    }
 
-        back.addActionListener(e -> { prevPage.setVisible(true); dispose(); });
+    // Charges the held price; the booking is stored only after the payment goes through.
+    private Response pay(Map<String, String> p) throws Exception {
+        String ref = p.get("bookingRef");
+        if (ref == null || ref.isEmpty()) return error(400, "bookingRef is required");
+        if (service.findHold(ref) == null && !service.isCheckedOut(ref))
+            return error(410, "No active hold for this booking; it may have expired. Book again.");
+        try {
+            // a retried request for a booking already paid for gets the original transaction back
+            SlotHolds.Hold hold = service.checkout(ref);
+            PaymentResult paid = hold.payment;
+            StringBuilder sb = new StringBuilder("{\"transactionId\":");
+            BookingExporter.jsonString(sb, paid.transactionId);
+            return new Response(200, sb.append(",\"amount\":").append(paid.amount)
+                    .append(",\"customerId\":").append(hold.customer.id)
+                    .append(",\"savedLocally\":").append(hold.customer.id < 0).append('}').toString());
+        } catch (BookingService.CheckoutFailure e) {
+            switch (e.reason) {
+                case EXPIRED: return error(410, e.getMessage());
+                case DECLINED: return error(402, "Payment Failed: " + e.getMessage());
+                case PENDING: {
+                    StringBuilder sb = new StringBuilder("{\"pending\":true,\"message\":");
+                    BookingExporter.jsonString(sb, e.getMessage());
+                    return new Response(202, sb.append('}').toString());
+                }
+                // the customer has been charged; this needs an operator, not a retry with another card
+                case NOT_SAVED: return error(500, e.getMessage());
+                default: return error(502, "Payment Failed: " + e.getMessage());
+            }
+        }
     }
-}
 
+    private static BookingRequest request(Map<String, String> p) {
+        BookingRequest r = new BookingRequest(p.get("name"), p.get("phone"), p.get("address"), p.get("eventType"),
+                p.get("date"), p.get("time"), p.get("venue"));
+        EventType type = EventType.fromName(r.eventType);
+        if (type != null) for (String key : type.requiredExtras) if (p.containsKey(key)) r.extra(key, p.get(key));
+        return r;
+    }
 
-class PaymentPage extends JFrame {
+    // Query string plus, for POST, an application/x-www-form-urlencoded body.
+    private static Map<String, String> params(HttpExchange ex) throws IOException {
+        Map<String, String> p = new HashMap<>();
+        decode(ex.getRequestURI().getRawQuery(), p);
+        if (ex.getRequestMethod().equals("POST")) {
+            try (InputStream in = ex.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY + 1);
+                if (body.length > MAX_BODY) throw new IOException("Request body too large");
+                decode(new String(body, StandardCharsets.UTF_8), p);
+            }
+        }
+        return p;
+    }
 
+    private static void decode(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            into.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
 
-public PaymentPage(int custId, String eventName, Event ev, EventSelection prevPage) {
-setTitle("Payment");
-setSize(520,500);
-setLayout(null);
-setLocationRelativeTo(null);
-setDefaultCloseOperation(EXIT_ON_CLOSE);
+    private static Response invalid(List<ValidationReport.FieldError> errors) {
+        StringBuilder sb = new StringBuilder("{\"errors\":[");
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"field\":");
+            BookingExporter.jsonString(sb, errors.get(i).field);
+            sb.append(",\"message\":");
+            BookingExporter.jsonString(sb, errors.get(i).message);
+            sb.append('}');
+        }
+        return new Response(400, sb.append("]}").toString());
+    }
 
+    private static Response error(int status, String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        BookingExporter.jsonString(sb, String.valueOf(message));
+        return new Response(status, sb.append('}').toString());
+    }
 
-JLabel header = new JLabel("Payment Summary", SwingConstants.CENTER);
-header.setBounds(60,10,400,40);
-header.setFont(header.getFont().deriveFont(18f));
-add(header);
+    private static void send(HttpExchange ex, Response r) throws IOException {
+        byte[] body = r.json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(r.status, body.length);
+        try (OutputStream out = ex.getResponseBody()) { out.write(body); }
+    }
+}
 
 
-JTextArea details = new JTextArea();
-details.setEditable(false);
-details.setFont(new Font("Arial", Font.PLAIN, 15));
+class StubJdbc {
+    private final long latencyNanos;
+    private final AtomicInteger keys = new AtomicInteger();
+
+    // latencyMicros simulates the round trip of every execute/commit call
+    StubJdbc(long latencyMicros) { this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros); }
+
+    public Connection open() {
+        AtomicBoolean closed = new AtomicBoolean(), autoCommit = new AtomicBoolean(true);
+        return proxy(Connection.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "prepareStatement": case "createStatement": return statement();
+                case "isValid": return !closed.get();
+                case "isClosed": return closed.get();
+                case "close": closed.set(true); return null;
+                case "getAutoCommit": return autoCommit.get();
+                case "setAutoCommit": autoCommit.set((Boolean) a[0]); return null;
+                case "commit": roundTrip(); return null;
+                default: return defaultValue(m.getReturnType());
+            }
+        });
+    }
 
+    private PreparedStatement statement() {
+        AtomicInteger batched = new AtomicInteger();
+        return proxy(PreparedStatement.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "executeUpdate": roundTrip(); keys.incrementAndGet(); return 1;
+                case "addBatch": batched.incrementAndGet(); return null;
+                case "clearBatch": batched.set(0); return null;
+                case "executeBatch": {
+                    roundTrip();
+                    int[] counts = new int[batched.getAndSet(0)];
+                    Arrays.fill(counts, 1);
+                    keys.addAndGet(counts.length);
+                    return counts;
+                }
+                case "getGeneratedKeys": return singleRow(keys.get());
+                case "executeQuery": roundTrip(); return singleRow(-1);
+                default: return defaultValue(m.getReturnType());
+            }
+        });
+    }
 
-StringBuilder sb = new StringBuilder();
-sb.append("Event Type: ").append(eventName).append("\n");
-sb.append("Date: ").append(ev.getDate()).append("\n");
-sb.append("Time: ").append(ev.getTime()).append("\n");
-sb.append("Venue: ").append(ev.getVenue()).append("\n\n");
-sb.append("Extra Details:\n").append(ev.extraDetails()).append("\n\n");
-sb.append("Total Amount to Pay: ₹").append(ev.calculatePrice()).append("\n");
+    // A one-row result holding the given key; key < 0 gives an empty result.
+    private ResultSet singleRow(int key) {
+        AtomicBoolean consumed = new AtomicBoolean(key < 0);
+        return proxy(ResultSet.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "next": return consumed.compareAndSet(false, true);
+                case "getInt": return key;
+                case "getLong": return (long) key;
+                default: return defaultValue(m.getReturnType());
+            }
+        });
+    }
 
+    private void roundTrip() { if (latencyNanos > 0) LockSupport.parkNanos(latencyNanos); }
 
-details.setText(sb.toString());
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler h) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, h);
+    }
 
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        return 0;
+    }
+}
 
-JScrollPane pane = new JScrollPane(details);
-pane.setBounds(60,70,400,260);
-add(pane);
 
+class BookingBenchmarks {
+    interface Op { Object run(int i) throws Exception; }
+
+    private static final long WARMUP_MS = Long.getLong("bench.warmupMs", 1_000L);
+    private static final long MEASURE_MS = Long.getLong("bench.measureMs", 2_000L);
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+    static volatile Object sink;
+
+    public static void run(String[] args) throws Exception {
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        DBConnection.useConnectionFactory(new StubJdbc(Long.getLong("bench.dbLatencyMicros", 0L))::open);
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        String[] dates = {"01/01/2025", "29/02/2024", "15/8/2026", "31/12/2030"};
+        String[] times = {"07:30 PM", "9:05 am", "12:00 PM", "11:59 PM"};
+        String[] phones = {"9876543210", "5551234", "123456789012345", "98765x3210"};
+        Event[] events = sampleEvents();
+        CustomerDAO dao = new CustomerDAO();
+        AtomicLong newPhones = new AtomicLong(7_000_000_000L);
+        LocalDate day = LocalDate.of(2026, 6, 1);
+        LocalTime at = LocalTime.of(18, 0);
+
+        System.out.printf("%-40s %7s %14s %12s %10s%n", "benchmark", "threads", "ops/s", "ns/op", "B/op");
+        for (int t : new int[]{1, threads}) {
+            bench("validation.isValidDate", t, i -> ValidationUtils.isValidDate(dates[i & 3]));
+            bench("validation.isValidTime", t, i -> ValidationUtils.isValidTime(times[i & 3]));
+            bench("validation.isValidPhone", t, i -> ValidationUtils.isValidPhone(phones[i & 3]));
+            for (Event ev : events) {
+                String name = ev.getClass().getSimpleName();
+                bench("event." + name + ".calculatePrice", t, i -> ev.calculatePrice());
+                bench("event." + name + ".extraDetails", t, i -> ev.extraDetails());
+            }
+            bench("dao.saveCustomer.repeat", t, i -> dao.saveCustomer("Bench Customer", "9876543210", "1 Bench Road"));
+            bench("dao.saveCustomer.new", t, i -> dao.saveCustomer("Bench Customer", String.valueOf(newPhones.incrementAndGet()), "1 Bench Road"));
+            bench("dao.saveBooking", t, i -> { dao.saveBooking(1, "Marriage", day, at, 50000, "Hall " + (i & 63), "Bride: A, Groom: B"); return null; });
+            bench("dao.saveCustomerAndBooking", t, i -> dao.saveCustomerAndBooking(0, "Bench Customer", String.valueOf(newPhones.incrementAndGet()), "1 Bench Road",
+                    "Marriage", day, at, 50000, "Hall " + (i & 63), "Bride: A, Groom: B", null));
+        }
+        System.out.println("pool: " + DBConnection.poolStats());
+    }
 
-JButton payNow = new JButton("Pay Now");
-payNow.setBounds(160,360,180,50);
-add(payNow);
+    static Event[] sampleEvents() {
+        MarriageEvent m = new MarriageEvent(); m.setBride("Asha"); m.setGroom("Ravi");
+        BirthdayEvent b = new BirthdayEvent(); b.setBirthdayName("Kiran");
+        EngagementEvent e = new EngagementEvent(); e.setCoupleNames("Asha & Ravi"); e.setGuestCount(120);
+        BabyShowerEvent s = new BabyShowerEvent(); s.setMotherName("Meera"); s.setTheme("Stars"); s.setGuestCount(40);
+        AnniversaryEvent a = new AnniversaryEvent(); a.setCoupleNames("Asha & Ravi"); a.setYearsCompleted(25); a.setVenueType("Lawn");
+        Event[] all = {m, b, e, s, a};
+        for (Event ev : all) ev.setDetails(LocalDate.of(2026, 6, 1), LocalTime.of(18, 0), "Grand Hall");
+        return all;
+    }
 
+    // Runs op on the given number of threads for a warm-up and a measured window, then prints one row.
+    static void bench(String name, int threads, Op op) throws Exception {
+        loop(threads, op, WARMUP_MS);
+        long[] result = loop(threads, op, MEASURE_MS);
+        long ops = result[0], bytes = result[1], busyNanos = result[2];
+        System.out.printf("%-40s %7d %14.0f %12.1f %10.1f%n", name, threads,
+                ops * 1e9 / TimeUnit.MILLISECONDS.toNanos(MEASURE_MS),
+                ops == 0 ? 0 : (double) busyNanos / ops, ops == 0 ? 0 : (double) bytes / ops);
+    }
 
-payNow.addActionListener(e -> {
-double amount = ev.calculatePrice();
-PaymentProcessor pp = new PaymentProcessor();
+    private static long[] loop(int threads, Op op, long millis) throws Exception {
+        LongAdder ops = new LongAdder(), bytes = new LongAdder(), busy = new LongAdder();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int w = 0; w < threads; w++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    long tid = Thread.currentThread().getId();
+                    long alloc0 = THREADS.getThreadAllocatedBytes(tid), t0 = System.nanoTime();
+                    long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(millis);
+                    int n = 0;
+                    Object last = null;
+                    do {
+                        for (int k = 0; k < 64; k++) last = op.run(n++);
+                    } while (System.nanoTime() < deadline);
+                    long t1 = System.nanoTime();
+                    bytes.add(THREADS.getThreadAllocatedBytes(tid) - alloc0);
+                    busy.add(t1 - t0);
+                    ops.add(n);
+                    sink = last;
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "bench-" + w);
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers) t.join();
+        if (failure.get() != null) throw failure.get();
+        return new long[]{ops.sum(), bytes.sum(), busy.sum()};
+    }
+}
 
 
-try {
-pp.processPayment(amount);
+class LoadGenerator {
+    private static final String[] FIRST = {"Asha", "Ravi", "Meera", "Kiran", "Arjun", "Divya", "Neha", "Vikram"};
+
+    // --load <bookings> [ratePerSecond, 0 = unthrottled] [concurrency]
+    public static void run(String[] args) throws Exception {
+        int total = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        if (Boolean.getBoolean("load.stubDb")) {
+            long latency = Long.getLong("load.dbLatencyMicros", 500L);
+            int shards = Integer.getInteger("load.shards", 1);
+            if (shards == 1) DBConnection.useConnectionFactory(new StubJdbc(latency)::open);
+            else {
+                String[] names = new String[shards];
+                ConnectionPool.ConnectionFactory[] factories = new ConnectionPool.ConnectionFactory[shards];
+                for (int i = 0; i < shards; i++) {
+                    names[i] = "stub-" + i;
+                    factories[i] = new StubJdbc(latency)::open;
+                }
+                DBConnection.useShards(names, factories);
+            }
+        }
+        AvailabilityIndex.get().load();
+
+        BookingService service = BookingService.shared();
+        int stages = BookingService.Stage.values().length;
+        long[][] stageNanos = new long[stages][total];
+        long[] endToEnd = new long[total];
+        LongAdder booked = new LongAdder(), rejected = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(total);
+        long intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            // latency is measured from the intended send time, so queueing behind a slow stage is not hidden
+            long intended = start + i * intervalNanos;
+            if (intervalNanos > 0) while (System.nanoTime() < intended) LockSupport.parkNanos(intended - System.nanoTime());
+            int n = i;
+            pool.execute(() -> {
+                try {
+                    BookingService.Outcome out = service.book(syntheticRequest(n));
+                    for (int s = 0; s < stages; s++) stageNanos[s][n] = out.stageNanos[s];
+                    if (out.booked) booked.increment(); else rejected.increment();
+                } catch (RuntimeException e) {
+                    rejected.increment();
+                } finally {
+                    endToEnd[n] = System.nanoTime() - (intervalNanos > 0 ? intended : start);
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("bookings=%d booked=%d rejected=%d elapsed=%.2fs throughput=%.1f/s%n",
+                total, booked.sum(), rejected.sum(), seconds, total / seconds);
+        System.out.printf("%-10s %12s %12s %12s %12s%n", "stage", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+        for (BookingService.Stage s : BookingService.Stage.values()) printPercentiles(s.name(), stageNanos[s.ordinal()]);
+        printPercentiles("TOTAL", endToEnd);
+    }
 
+    static BookingRequest syntheticRequest(int n) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        EventType type = EventType.values()[n % EventType.values().length];
+        String name = FIRST[rnd.nextInt(FIRST.length)];
+        LocalDate date = LocalDate.now().plusDays(1 + rnd.nextInt(730));
+        int hour = 1 + rnd.nextInt(12);
+        BookingRequest r = new BookingRequest(name + " " + n, String.valueOf(9_000_000_000L + n), n + " Load Street",
+                type.displayName, ValidationUtils.formatDate(date), String.format("%02d:00 %s", hour, rnd.nextBoolean() ? "AM" : "PM"),
+                "Hall " + rnd.nextInt(500));
+        switch (type) {
+            case MARRIAGE: return r.extra("bride", name).extra("groom", FIRST[rnd.nextInt(FIRST.length)]);
+            case BIRTHDAY: return r.extra("birthdayName", name);
+            case ENGAGEMENT: return r.extra("couple", name + " & Co").extra("guests", String.valueOf(rnd.nextInt(400)));
+            case BABY_SHOWER: return r.extra("mother", name).extra("theme", "Stars").extra("guests", String.valueOf(rnd.nextInt(80)));
+            default: return r.extra("couple", name + " & Co").extra("years", String.valueOf(1 + rnd.nextInt(60)));
+        }
+    }
 
-JOptionPane.showMessageDialog(
-this,
-"Payment Successful!\nPaid Amount: ₹" + amount +
-"\n\n🎉 Booking Confirmed! 🎉",
-"Success",
-JOptionPane.INFORMATION_MESSAGE
-);
+    private static void printPercentiles(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s %12.3f %12.3f %12.3f %12.3f%n", label,
+                at(sorted, 0.50) / 1e6, at(sorted, 0.99) / 1e6, at(sorted, 0.999) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
 
+    private static long at(long[] sorted, double q) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+}
 
-prevPage.setVisible(true);
-dispose();
 
+public class EventManagementApp {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].startsWith("--")) Metrics.start();
+        if (args.length > 0 && args[0].equals("--bench")) { BookingBenchmarks.run(args); return; }
+        if (args.length > 0 && args[0].equals("--load")) { LoadGenerator.run(args); return; }
+        if (args.length > 0 && args[0].equals("--import")) { BulkImporter.run(args); return; }
+        if (args.length > 0 && args[0].equals("--export")) { BookingExporter.run(args); return; }
+        if (args.length > 0 && args[0].equals("--server")) { BookingHttpServer.run(args); return; }
+        if (args.length > 0 && args[0].equals("--rebalance")) { ShardRebalancer.run(args); return; }
 
-} catch (Exception ex) {
-JOptionPane.showMessageDialog(
-this,
-"Payment Failed: " + ex.getMessage(),
-"Error",
-JOptionPane.ERROR_MESSAGE
-);
-}
-});
-}
-}
+        try {
+            BookingJournal.get().start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
+        // Started once the window is up: the driver load, first handshake and index loads would otherwise compete
+        // with the EDT for the CPU during the first frame, and nothing on the first page needs the database.
+        Thread warmUp = new Thread(() -> {
+            Metrics.start();
+            DBConnection.warmUp();
+            BookingSchema.migrate();
+            AvailabilityIndex.get().load();
+            SearchIndex.get().load();
+            BookingAnalytics.get().load();
+            Metrics.markStartup("startup.dbReady");
+        }, "db-warmup");
+        warmUp.setDaemon(true);
 
-public class EventManagementApp {
-    public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
+            Metrics.installEdtStallDetector(Long.getLong("eventdb.edtStallMs", 100L));
             try {
 
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             } catch (Exception ignored) {}
-            new CustomerForm().setVisible(true);
+            AppWindow.get().setVisible(true);
+            warmUp.start();
         });
     }
 }
\ No newline at end of file